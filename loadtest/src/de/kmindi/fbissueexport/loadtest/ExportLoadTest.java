@@ -0,0 +1,206 @@
+package de.kmindi.fbissueexport.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import de.kmindi.fbissueexport.BitbucketExporter;
+import de.kmindi.fbissueexport.ExporterSession;
+import de.kmindi.fbissueexport.ExporterSessionRegistry;
+import de.kmindi.fbissueexport.GitHubExporter;
+import de.kmindi.fbissueexport.PlatformExporter;
+import de.kmindi.fbissueexport.RemoteRepository;
+import de.kmindi.fbissueexport.SharedHttpClient;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.Priorities;
+import edu.umd.cs.findbugs.SourceLineAnnotation;
+
+/**
+ * Load test driver exporting synthetic bugs through the PlatformExporters against a TrackerStubServer.
+ *
+ * Runs outside of eclipse, only needs the plugin, its libs and findbugs.jar on the classpath.
+ * The project dependent parts of an export (source file lookup, opening the browser) are replaced, everything else
+ * (fork lookup, rendering, HTTP requests, the session shared by all exports) is the code used in eclipse.
+ *
+ * Usage: ExportLoadTest [github|bitbucket] [bugs] [threads] [latencyMillis] [errorRate] [seededIssues]
+ *
+ * Reports throughput, p50/p99 latency of a single export and the allocation rate of the exporting threads.
+ *
+ * @author Kai Mindermann
+ */
+public class ExportLoadTest {
+
+	private static final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws Exception {
+		String platform = args.length > 0 ? args[0] : "github";
+		int bugs = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+		int latencyMillis = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+		double errorRate = args.length > 4 ? Double.parseDouble(args[4]) : 0.0;
+		int seededIssues = args.length > 5 ? Integer.parseInt(args[5]) : 500;
+
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.WARN);
+
+		TrackerStubServer server = new TrackerStubServer(0, threads * 2);
+		server.setLatency(latencyMillis, latencyMillis / 2);
+		server.setErrorRate(errorRate);
+		server.seedIssues(seededIssues);
+		server.start();
+
+		final File sourceFile = createSourceFile();
+		final String baseUrl = server.getBaseUrl();
+		final String platformName = platform;
+		// exports in eclipse share the session of their repository (Bug-ID index, response cache, issue repository)
+		final ExporterSession session = ExporterSessionRegistry.getSession(
+				new RemoteRepository("origin", platform.equals("bitbucket") ? "bitbucket.org" : "github.com", "loadtest", "repository"), baseUrl);
+		final long[] latencies = new long[bugs];
+		final AtomicInteger failures = new AtomicInteger();
+		final AtomicLong allocatedBytes = new AtomicLong();
+
+		// warm up class loading and the connection pool, not measured
+		createExporter(platformName, createBug(-1), sourceFile, baseUrl, session).exportBug();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		long wallStart = System.nanoTime();
+		for(int i = 0; i < bugs; i++) {
+			final int index = i;
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					long threadId = Thread.currentThread().getId();
+					long allocationStart = threadBean.getThreadAllocatedBytes(threadId);
+					long start = System.nanoTime();
+					boolean exported = createExporter(platformName, createBug(index), sourceFile, baseUrl, session).exportBug();
+					latencies[index] = System.nanoTime() - start;
+					allocatedBytes.addAndGet(threadBean.getThreadAllocatedBytes(threadId) - allocationStart);
+					if(!exported) {
+						failures.incrementAndGet();
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.HOURS);
+		long wallNanos = System.nanoTime() - wallStart;
+
+		server.stop();
+		ExporterSessionRegistry.clear();
+		SharedHttpClient.shutdown();
+		sourceFile.delete();
+
+		Arrays.sort(latencies);
+		double seconds = wallNanos / 1e9;
+		System.out.println("platform:          " + platform);
+		System.out.println("exports:           " + bugs + " (" + failures.get() + " failed)");
+		System.out.println("threads:           " + threads);
+		System.out.println("wall time:         " + String.format("%.2f s", seconds));
+		System.out.println("throughput:        " + String.format("%.1f exports/s", bugs / seconds));
+		System.out.println("latency p50:       " + String.format("%.2f ms", percentile(latencies, 0.50) / 1e6));
+		System.out.println("latency p99:       " + String.format("%.2f ms", percentile(latencies, 0.99) / 1e6));
+		System.out.println("allocation rate:   " + String.format("%.1f MB/s (%.1f KB/export)", allocatedBytes.get() / seconds / (1024 * 1024), allocatedBytes.get() / 1024.0 / bugs));
+		System.out.println("stub requests:     " + server.getRequestCount() + " (" + server.getInjectedErrorCount() + " injected errors, " + server.getRateLimitedCount() + " rate limited)");
+	}
+
+	/**
+	 * Creates an exporter for the stub server which does not need an eclipse project.
+	 */
+	private static PlatformExporter createExporter(String platform, BugInstance bug, File sourceFile, String baseUrl, ExporterSession session) {
+		PlatformExporter exporter = platform.equals("bitbucket")
+				? new LoadTestBitbucketExporter(bug, sourceFile)
+				: new LoadTestGitHubExporter(bug, sourceFile);
+		exporter.setApiBaseUrl(baseUrl);
+		exporter.setSession(session);
+		return exporter;
+	}
+
+	/**
+	 * Creates a synthetic bug of a pattern known to FindBugs, so the description can be rendered.
+	 */
+	private static BugInstance createBug(int index) {
+		String className = "de.kmindi.loadtest.Example" + Math.abs(index % 100);
+		int line = 20 + Math.abs(index % 150);
+		BugInstance bug = new BugInstance("NP_NULL_ON_SOME_PATH", Priorities.NORMAL_PRIORITY);
+		bug.addClass(className);
+		bug.addSourceLine(new SourceLineAnnotation(className, "Example.java", line, line + 2, 0, 10));
+		bug.setInstanceHash(String.format("%032x", 1000000 + index));
+		return bug;
+	}
+
+	/**
+	 * Creates a source file the snippets are read from.
+	 */
+	private static File createSourceFile() throws IOException {
+		File file = File.createTempFile("fbissueexport-loadtest", ".java");
+		try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+			for(int i = 1; i <= 200; i++) {
+				writer.println("\t\tString value" + i + " = map.get(\"key" + i + "\"); // line " + i);
+			}
+		}
+		return file;
+	}
+
+	private static long percentile(long[] sorted, double percentile) {
+		if(sorted.length == 0) {
+			return 0;
+		}
+		return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+	}
+
+	/**
+	 * GitHubExporter reading the snippet from a fixed file and not opening the browser.
+	 */
+	private static class LoadTestGitHubExporter extends GitHubExporter {
+		private File sourceFile;
+
+		LoadTestGitHubExporter(BugInstance bug, File sourceFile) {
+			super("loadtest", "repository", bug, null);
+			this.sourceFile = sourceFile;
+		}
+
+		@Override
+		protected File getSourceFile(BugInstance bug) {
+			return sourceFile;
+		}
+
+		@Override
+		protected void openIssuePage(URI uri) {
+			// the issue form is opened by the user, nothing to measure
+		}
+	}
+
+	/**
+	 * BitbucketExporter reading the snippet from a fixed file and not opening the browser.
+	 */
+	private static class LoadTestBitbucketExporter extends BitbucketExporter {
+		private File sourceFile;
+
+		LoadTestBitbucketExporter(BugInstance bug, File sourceFile) {
+			super("loadtest", "repository", bug, null);
+			this.sourceFile = sourceFile;
+		}
+
+		@Override
+		protected File getSourceFile(BugInstance bug) {
+			return sourceFile;
+		}
+
+		@Override
+		protected void openIssuePage(URI uri) {
+			// the issue is shown to the user, nothing to measure
+		}
+	}
+}
@@ -0,0 +1,372 @@
+package de.kmindi.fbissueexport.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP server emulating the parts of the GitHub and Bitbucket APIs used by the PlatformExporters.
+ *
+ * Emulates:
+ *  - repository lookup (GitHub: /repos/OWNER/REPO, Bitbucket: /2.0/repositories/OWNER/REPO)
+ *  - issue lists with pagination (GitHub: Link header, Bitbucket: "next" field) and ETags
+ *  - the Bitbucket q= filter for content.raw ~ "TEXT"
+ *  - issue creation (GitHub: POST /repos/OWNER/REPO/issues, Bitbucket: POST /2.0/repositories/OWNER/REPO/issues)
+ *  - rate limiting with the X-RateLimit-* headers and 403 responses when exhausted
+ *
+ * Latency and errors can be injected to see how the exporters behave on a slow or unreliable platform.
+ *
+ * @author Kai Mindermann
+ */
+public class TrackerStubServer {
+
+	private static Logger logger = Logger.getLogger(TrackerStubServer.class);
+
+	private static final Pattern gitHubRepoPattern = Pattern.compile("/repos/([^/]+)/([^/]+)(/issues)?/?");
+	private static final Pattern bitbucketRepoPattern = Pattern.compile("/2\\.0/repositories/([^/]+)/([^/]+)(/issues)?/?");
+	private static final Pattern bitbucketContentFilterPattern = Pattern.compile("content\\.raw ~ \"([^\"]*)\"");
+
+	private HttpServer server;
+	private ExecutorService executor;
+	private ObjectMapper mapper = new ObjectMapper();
+	private List<Map<String, Object>> issues = new ArrayList<Map<String, Object>>();
+
+	private int latencyMillis = 0;
+	private int latencyJitterMillis = 0;
+	private double errorRate = 0.0;
+	private int rateLimit = Integer.MAX_VALUE;
+	private AtomicInteger rateLimitRemaining = new AtomicInteger(Integer.MAX_VALUE);
+
+	private AtomicLong requestCount = new AtomicLong();
+	private AtomicLong injectedErrorCount = new AtomicLong();
+	private AtomicLong rateLimitedCount = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 * @param port the port to listen on, 0 for any free port
+	 * @param threads number of threads handling requests
+	 * @throws IOException if the server could not be bound
+	 */
+	public TrackerStubServer(int port, int threads) throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+		executor = Executors.newFixedThreadPool(threads);
+		server.setExecutor(executor);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					dispatch(exchange);
+				} catch (RuntimeException e) {
+					logger.error(e.getMessage(), e);
+					respond(exchange, 500, "{\"message\":\"stub failure\"}");
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Starts the server.
+	 */
+	public void start() {
+		server.start();
+		logger.info("tracker stub listening on " + getBaseUrl());
+	}
+
+	/**
+	 * Stops the server.
+	 */
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Gets the base URL to be used with PlatformExporter.setApiBaseUrl(...).
+	 * @return URL ending with "/"
+	 */
+	public String getBaseUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+	}
+
+	/**
+	 * Sets the latency added to every response.
+	 * @param latencyMillis fixed part
+	 * @param latencyJitterMillis maximum of the random part
+	 */
+	public void setLatency(int latencyMillis, int latencyJitterMillis) {
+		this.latencyMillis = latencyMillis;
+		this.latencyJitterMillis = latencyJitterMillis;
+	}
+
+	/**
+	 * Sets the share of requests answered with "502 Bad Gateway".
+	 * @param errorRate between 0.0 and 1.0
+	 */
+	public void setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * Sets the number of requests allowed before responding with "403 Forbidden".
+	 * @param rateLimit
+	 */
+	public void setRateLimit(int rateLimit) {
+		this.rateLimit = rateLimit;
+		this.rateLimitRemaining.set(rateLimit);
+	}
+
+	/**
+	 * Adds existing issues, each carrying a FindBugs Bug-ID.
+	 * @param count number of issues to add
+	 */
+	public synchronized void seedIssues(int count) {
+		for(int i = 0; i < count; i++) {
+			addIssue("seeded issue " + i, "(FindBugs Bug-ID: " + String.format("%032x", i) + ")");
+		}
+	}
+
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	public long getInjectedErrorCount() {
+		return injectedErrorCount.get();
+	}
+
+	public long getRateLimitedCount() {
+		return rateLimitedCount.get();
+	}
+
+	public synchronized int getIssueCount() {
+		return issues.size();
+	}
+
+	/**
+	 * Handles a request after adding latency, errors and rate limiting.
+	 * @param exchange
+	 * @throws IOException
+	 */
+	private void dispatch(HttpExchange exchange) throws IOException {
+		requestCount.incrementAndGet();
+		String body = readBody(exchange.getRequestBody());
+		sleep();
+
+		if(errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+			injectedErrorCount.incrementAndGet();
+			respond(exchange, 502, "{\"message\":\"injected error\"}");
+			return;
+		}
+		int remaining = rateLimitRemaining.decrementAndGet();
+		exchange.getResponseHeaders().add("X-RateLimit-Limit", String.valueOf(rateLimit));
+		exchange.getResponseHeaders().add("X-RateLimit-Remaining", String.valueOf(Math.max(remaining, 0)));
+		exchange.getResponseHeaders().add("X-RateLimit-Reset", String.valueOf(System.currentTimeMillis() / 1000 + 3600));
+		if(remaining < 0) {
+			rateLimitedCount.incrementAndGet();
+			respond(exchange, 403, "{\"message\":\"API rate limit exceeded\"}");
+			return;
+		}
+
+		String method = exchange.getRequestMethod();
+		String path = exchange.getRequestURI().getPath();
+		Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+		Matcher matcher;
+		if(path.equals("/rate_limit")) {
+			respond(exchange, 200, "{\"rate\":{\"limit\":" + rateLimit + ",\"remaining\":" + Math.max(remaining, 0) + "}}");
+		} else if((matcher = gitHubRepoPattern.matcher(path)).matches()) {
+			String fullName = matcher.group(1) + "/" + matcher.group(2);
+			if(matcher.group(3) == null) {
+				respondRepository(exchange, fullName);
+			} else if(method.equals("POST")) {
+				Map<?, ?> issue = mapper.readValue(body, Map.class);
+				respond(exchange, 201, mapper.writeValueAsString(addIssue((String) issue.get("title"), (String) issue.get("body"))));
+			} else {
+				respondGitHubIssues(exchange, query);
+			}
+		} else if((matcher = bitbucketRepoPattern.matcher(path)).matches()) {
+			String fullName = matcher.group(1) + "/" + matcher.group(2);
+			if(matcher.group(3) == null) {
+				respondRepository(exchange, fullName);
+			} else if(method.equals("POST")) {
+				Map<?, ?> issue = mapper.readValue(body, Map.class);
+				Map<?, ?> content = (Map<?, ?>) issue.get("content");
+				respond(exchange, 201, mapper.writeValueAsString(addIssue((String) issue.get("title"), content != null ? (String) content.get("raw") : null)));
+			} else {
+				respondBitbucketIssues(exchange, query);
+			}
+		} else {
+			respond(exchange, 404, "{\"message\":\"Not Found\"}");
+		}
+	}
+
+	private void respondRepository(HttpExchange exchange, String fullName) throws IOException {
+		Map<String, Object> repo = new LinkedHashMap<String, Object>();
+		repo.put("full_name", fullName);
+		repo.put("has_issues", true);
+		respond(exchange, 200, mapper.writeValueAsString(repo));
+	}
+
+	private void respondGitHubIssues(HttpExchange exchange, Map<String, String> query) throws IOException {
+		int perPage = Math.min(parseInt(query.get("per_page"), 30), 100);
+		int page = parseInt(query.get("page"), 1);
+		List<Map<String, Object>> snapshot;
+		synchronized (this) {
+			String etag = "\"issues-" + issues.size() + "-" + page + "-" + perPage + "\"";
+			exchange.getResponseHeaders().add("ETag", etag);
+			if(etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				respond(exchange, 304, null);
+				return;
+			}
+			snapshot = new ArrayList<Map<String, Object>>(issues);
+		}
+		int lastPage = Math.max(1, (snapshot.size() + perPage - 1) / perPage);
+		String pageUrl = getBaseUrl() + exchange.getRequestURI().getPath().substring(1) + "?per_page=" + perPage + "&page=";
+		StringBuilder link = new StringBuilder();
+		if(page < lastPage) {
+			link.append("<").append(pageUrl).append(page + 1).append(">; rel=\"next\", ");
+		}
+		link.append("<").append(pageUrl).append(lastPage).append(">; rel=\"last\"");
+		exchange.getResponseHeaders().add("Link", link.toString());
+		respond(exchange, 200, mapper.writeValueAsString(slice(snapshot, page, perPage)));
+	}
+
+	private void respondBitbucketIssues(HttpExchange exchange, Map<String, String> query) throws IOException {
+		int pageLength = Math.min(parseInt(query.get("pagelen"), 10), 100);
+		int page = parseInt(query.get("page"), 1);
+		String q = query.get("q");
+		Matcher filter = q != null ? bitbucketContentFilterPattern.matcher(q) : null;
+		String needle = filter != null && filter.find() ? filter.group(1) : null;
+		List<Map<String, Object>> snapshot = new ArrayList<Map<String, Object>>();
+		synchronized (this) {
+			for(Map<String, Object> issue : issues) {
+				String issueBody = (String) issue.get("body");
+				if(needle == null || (issueBody != null && issueBody.contains(needle))) {
+					snapshot.add(issue);
+				}
+			}
+		}
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("pagelen", pageLength);
+		result.put("page", page);
+		result.put("size", snapshot.size());
+		result.put("values", slice(snapshot, page, pageLength));
+		if(page * pageLength < snapshot.size()) {
+			String filterQuery = q != null ? "&q=" + URLEncoder.encode(q, "UTF-8") : "";
+			result.put("next", getBaseUrl() + exchange.getRequestURI().getPath().substring(1) + "?pagelen=" + pageLength + "&page=" + (page + 1) + filterQuery);
+		}
+		respond(exchange, 200, mapper.writeValueAsString(result));
+	}
+
+	/**
+	 * Adds an issue with the fields of both platforms.
+	 * @return the new issue
+	 */
+	private synchronized Map<String, Object> addIssue(String title, String body) {
+		int number = issues.size() + 1;
+		Map<String, Object> issue = new LinkedHashMap<String, Object>();
+		issue.put("number", number);
+		issue.put("id", number);
+		issue.put("title", title);
+		issue.put("body", body);
+		Map<String, Object> content = new HashMap<String, Object>();
+		content.put("raw", body);
+		issue.put("content", content);
+		issue.put("state", "open");
+		issue.put("html_url", getBaseUrl() + "issues/" + number);
+		issue.put("updated_at", "2015-01-01T00:00:00Z");
+		issue.put("updated_on", "2015-01-01T00:00:00+00:00");
+		Map<String, Object> html = new HashMap<String, Object>();
+		html.put("href", getBaseUrl() + "issues/" + number);
+		Map<String, Object> links = new HashMap<String, Object>();
+		links.put("html", html);
+		issue.put("links", links);
+		issues.add(issue);
+		return issue;
+	}
+
+	private static List<Map<String, Object>> slice(List<Map<String, Object>> list, int page, int pageLength) {
+		int from = Math.min((page - 1) * pageLength, list.size());
+		int to = Math.min(from + pageLength, list.size());
+		return list.subList(from, to);
+	}
+
+	private void sleep() {
+		int millis = latencyMillis + (latencyJitterMillis > 0 ? ThreadLocalRandom.current().nextInt(latencyJitterMillis) : 0);
+		if(millis > 0) {
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		if(body == null) {
+			exchange.sendResponseHeaders(status, -1);
+			return;
+		}
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static String readBody(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		for(int read; (read = in.read(buffer)) != -1;) {
+			out.write(buffer, 0, read);
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static Map<String, String> parseQuery(String query) throws IOException {
+		Map<String, String> result = new HashMap<String, String>();
+		if(query == null || query.isEmpty()) {
+			return result;
+		}
+		for(String pair : query.split("&")) {
+			int index = pair.indexOf('=');
+			if(index > 0) {
+				result.put(URLDecoder.decode(pair.substring(0, index), "UTF-8"), URLDecoder.decode(pair.substring(index + 1), "UTF-8"));
+			}
+		}
+		return result;
+	}
+
+	private static int parseInt(String value, int defaultValue) {
+		try {
+			return value != null ? Integer.parseInt(value) : defaultValue;
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+}
@@ -1,8 +1,14 @@
 package de.kmindi.fbissueexport;
 
+import java.io.File;
+
+import org.apache.log4j.AsyncAppender;
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Logger;
 import org.apache.log4j.PatternLayout;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
@@ -18,6 +24,12 @@ public class Activator extends AbstractUIPlugin {
 	// The shared instance
 	private static Activator plugin;
 	
+	// Job preparing the first export in background
+	private WarmUpJob warmUpJob = null;
+	
+	// Appender writing the log in background
+	private AsyncAppender logAppender = null;
+	
 	/**
 	 * The constructor
 	 */
@@ -32,19 +44,61 @@ public class Activator extends AbstractUIPlugin {
 		super.start(context);
 		plugin = this;
 		
-		// initialize logger environement
+		// initialize logger environement, the console is written in background so logging does not block exports
+		logAppender = new AsyncAppender();
+		logAppender.setBlocking(false);
+		logAppender.addAppender(new ConsoleAppender(new PatternLayout("%d{ISO8601} %-5p [%t] %c: %m%n")));
 		BasicConfigurator.resetConfiguration();
-		BasicConfigurator.configure(new ConsoleAppender(new PatternLayout("%d{ISO8601} %-5p [%t] %c: %m%n")));
+		BasicConfigurator.configure(logAppender);
+		
+		IEclipsePreferences preferences = InstanceScope.INSTANCE.getNode("de.kmindi.fbissueexport");
+		if(preferences.getBoolean("journal.enabled", false)) {
+			ExportJournal.start(getJournalFile());
+		}
+	}
+
+	/**
+	 * Schedules the WarmUpJob, which prepares the first export in background.
+	 * Called by WarmUpStartup once the workbench is started, does nothing if disabled by the preference "warmup.enabled".
+	 */
+	public synchronized void scheduleWarmUp() {
+		if(warmUpJob != null || !InstanceScope.INSTANCE.getNode("de.kmindi.fbissueexport").getBoolean("warmup.enabled", true)) {
+			return;
+		}
+		warmUpJob = new WarmUpJob();
+		warmUpJob.schedule(5000);
 	}
 
 	/**
 	 * @see org.eclipse.ui.plugin.AbstractUIPlugin#stop(org.osgi.framework.BundleContext)
 	 */
 	public void stop(BundleContext context) throws Exception {
+		if(warmUpJob != null) {
+			warmUpJob.cancel();
+			warmUpJob = null;
+		}
+		ExporterSessionRegistry.clear();
+		MarkerHarvester.clear();
+		SharedHttpClient.shutdown();
+		ExportJournal.stop();
+		if(logAppender != null) {
+			Logger.getRootLogger().removeAppender(logAppender);
+			logAppender.close();
+			logAppender = null;
+		}
 		plugin = null;
 		super.stop(context);
 	}
 
+	/**
+	 * Returns the file the ExportJournal is written to
+	 *
+	 * @return the file in the state location of the plug-in, it may not exist yet
+	 */
+	public File getJournalFile() {
+		return new File(getStateLocation().toFile(), "export-journal.jsonl");
+	}
+
 	/**
 	 * Returns the shared instance
 	 *
@@ -0,0 +1,220 @@
+package de.kmindi.fbissueexport;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Index of the tickets of an Allura (SourceForge) tracker which carry a FindBugs Bug-ID.
+ *
+ * Built with the Allura REST search API, so only tickets containing a Bug-ID are transferred. Further refreshs
+ * only ask for tickets modified since the last one. The index is persisted in the state location of the plugin.
+ *
+ * @see https://sourceforge.net/p/forge/documentation/Allura%20API/
+ * @author Kai Mindermann
+ */
+public class AlluraTicketIndex {
+
+	private static Logger logger = Logger.getLogger(AlluraTicketIndex.class);
+	private static Map<String, AlluraTicketIndex> indexes = new ConcurrentHashMap<String, AlluraTicketIndex>();
+
+	/**
+	 * Minimum time between two refreshs, exports in a row do not need to ask the server every time.
+	 */
+	private static final long refreshInterval = 60 * 1000;
+	private static final int pageSize = 100;
+
+	private String baseUrl;
+	private String projectName;
+	private String trackerName;
+	private Map<String, Integer> tickets = new HashMap<String, Integer>();
+	private String lastModified = null;
+	private long lastRefresh = 0;
+	private boolean loaded = false;
+
+	/**
+	 * Constructor.
+	 * @param baseUrl base URL of SourceForge ending with "/"
+	 * @param projectName the SourceForge project
+	 * @param trackerName the mount point of the tracker, usually "bugs"
+	 */
+	private AlluraTicketIndex(String baseUrl, String projectName, String trackerName) {
+		this.baseUrl = baseUrl;
+		this.projectName = projectName;
+		this.trackerName = trackerName;
+	}
+
+	/**
+	 * Gets the shared index of a tracker.
+	 * @param baseUrl base URL of SourceForge ending with "/"
+	 * @param projectName the SourceForge project
+	 * @param trackerName the mount point of the tracker, usually "bugs"
+	 * @return the index, which might not be loaded or refreshed yet
+	 */
+	public static AlluraTicketIndex getIndex(String baseUrl, String projectName, String trackerName) {
+		String key = baseUrl + "p/" + projectName + "/" + trackerName;
+		AlluraTicketIndex index = indexes.get(key);
+		if(index == null) {
+			indexes.putIfAbsent(key, new AlluraTicketIndex(baseUrl, projectName, trackerName));
+			index = indexes.get(key);
+		}
+		return index;
+	}
+
+	/**
+	 * Gets the ticket a bug was exported to, refreshes the index if it is older than the refresh interval.
+	 * @param bugId the FindBugs Bug-ID
+	 * @return null if no ticket carries the Bug-ID, the URI of the ticket otherwise
+	 */
+	public synchronized URI findTicket(String bugId) {
+		if(System.currentTimeMillis() - lastRefresh > refreshInterval) {
+			refresh();
+		}
+		Integer ticketNumber = tickets.get(bugId);
+		if(ticketNumber == null) {
+			return null;
+		}
+		try {
+			return new URI(baseUrl + "p/" + projectName + "/" + trackerName + "/" + ticketNumber + "/");
+		} catch (URISyntaxException e) {
+			logger.error(e.getMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Loads the persisted index and asks the server for tickets modified since the last refresh.
+	 * @return false if the server could not be asked
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized boolean refresh() {
+		load();
+		// also after a failed refresh, an unreachable server should not slow down every export
+		lastRefresh = System.currentTimeMillis();
+		ObjectMapper mapper = new ObjectMapper();
+		String query = "\"FindBugs Bug-ID\"";
+		if(lastModified != null) {
+			query += " AND mod_date_dt:[" + lastModified + " TO NOW]";
+		}
+		String newLastModified = lastModified;
+		try {
+			for(int page = 0;; page++) {
+				URIBuilder uriBuilder = new URIBuilder(baseUrl + "rest/p/" + projectName + "/" + trackerName + "/search");
+				uriBuilder.addParameter("q", query);
+				uriBuilder.addParameter("limit", String.valueOf(pageSize));
+				uriBuilder.addParameter("page", String.valueOf(page));
+				ResponseWithEntity response = SharedHttpClient.executeGet(uriBuilder.build().toString(), Collections.<String, String>emptyMap());
+				if(response == null || response.getResponse().getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+					logger.warn("could not search tickets of " + projectName + "/" + trackerName);
+					return false;
+				}
+				Map<String, Object> result = mapper.readValue(response.getEntity(), Map.class);
+				List<Map<String, Object>> found = (List<Map<String, Object>>) result.get("tickets");
+				for(Map<String, Object> ticket : found) {
+					String bugId = PlatformExporter.getBugId((String) ticket.get("description"));
+					if(bugId != null) {
+						tickets.put(bugId, ((Number) ticket.get("ticket_num")).intValue());
+					}
+					String modified = toSolrDate((String) ticket.get("mod_date"));
+					if(modified != null && (newLastModified == null || modified.compareTo(newLastModified) > 0)) {
+						newLastModified = modified;
+					}
+				}
+				Number count = (Number) result.get("count");
+				if(found.size() < pageSize || count == null || (page + 1) * pageSize >= count.intValue()) {
+					break;
+				}
+			}
+		} catch (IOException | URISyntaxException e) {
+			logger.error(e.getMessage(), e);
+			return false;
+		}
+		lastModified = newLastModified;
+		if(logger.isDebugEnabled()) {
+			logger.debug("ticket index of " + projectName + "/" + trackerName + " contains " + tickets.size() + " exported bugs");
+		}
+		store();
+		return true;
+	}
+
+	/**
+	 * Loads the persisted index, does nothing if it is loaded already.
+	 */
+	@SuppressWarnings("unchecked")
+	private void load() {
+		if(loaded) {
+			return;
+		}
+		loaded = true;
+		File file = getIndexFile();
+		if(file == null || !file.exists()) {
+			return;
+		}
+		try {
+			Map<String, Object> data = new ObjectMapper().readValue(file, Map.class);
+			lastModified = (String) data.get("lastModified");
+			for(Map.Entry<String, Object> ticket : ((Map<String, Object>) data.get("tickets")).entrySet()) {
+				tickets.put(ticket.getKey(), ((Number) ticket.getValue()).intValue());
+			}
+		} catch (IOException | RuntimeException e) {
+			logger.warn("could not load ticket index " + file + ", rebuilding it: " + e.getMessage());
+			tickets.clear();
+			lastModified = null;
+		}
+	}
+
+	/**
+	 * Persists the index in the state location of the plugin.
+	 */
+	private void store() {
+		File file = getIndexFile();
+		if(file == null) {
+			return;
+		}
+		Map<String, Object> data = new HashMap<String, Object>();
+		data.put("lastModified", lastModified);
+		data.put("tickets", tickets);
+		try {
+			new ObjectMapper().writeValue(file, data);
+		} catch (IOException e) {
+			logger.error(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Gets the file the index is persisted in.
+	 * @return null outside of a running platform
+	 */
+	private File getIndexFile() {
+		if(Activator.getDefault() == null) {
+			return null;
+		}
+		File directory = new File(Activator.getDefault().getStateLocation().toFile(), "allura");
+		directory.mkdirs();
+		return new File(directory, (projectName + "-" + trackerName).replaceAll("[^\\w\\-]", "_") + ".json");
+	}
+
+	/**
+	 * Converts a date of the Allura API ("2015-01-20 10:31:04.123000") to the format of the search index ("2015-01-20T10:31:04Z").
+	 * @param date
+	 * @return null if the date is null or has an unexpected format
+	 */
+	private static String toSolrDate(String date) {
+		if(date == null || date.length() < 19) {
+			return null;
+		}
+		return date.substring(0, 10) + "T" + date.substring(11, 19) + "Z";
+	}
+}
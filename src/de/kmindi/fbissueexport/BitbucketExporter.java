@@ -2,18 +2,23 @@ package de.kmindi.fbissueexport;
 
 import java.io.IOException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
-import org.apache.http.HttpResponse;
-import org.apache.http.NameValuePair;
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
 import org.apache.http.ParseException;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
 import org.apache.log4j.Logger;
 import org.eclipse.core.resources.IProject;
 
@@ -26,64 +31,98 @@ import edu.umd.cs.findbugs.BugInstance;
  * @author Kai Mindermann
  *
  */
-public class BitbucketExporter extends PlatformExporter implements IPlatformExporter {
+public class BitbucketExporter extends PlatformExporter implements IPlatformExporter, IIssueStateProvider {
 
 	private static Logger logger = Logger.getLogger(BitbucketExporter.class);
 	
+	/**
+	 * States of Bitbucket issues which mean that the bug will not be worked on (anymore).
+	 */
+	private static final List<String> closedStates = Arrays.asList("resolved", "invalid", "duplicate", "wontfix", "closed");
+	
 	protected BitbucketExporter(String ownerName, String repositoryName,
 			BugInstance bugInstance, IProject project) {
 		super(ownerName, repositoryName, bugInstance, project);
+		this.apiBaseUrl = "https://api.bitbucket.org/";
+	}
+	
+	/**
+	 * Gets the API URL which just needs "OWNER/REPOSITORY" to be appended.
+	 * @return
+	 */
+	protected String getApiRepoUrl() {
+		return apiBaseUrl + "2.0/repositories/";
 	}
 	
+	@SuppressWarnings("unchecked")
 	public boolean exportBug() {
-		final String apiRepoUrl = "https://api.bitbucket.org/2.0/repositories/";
-		String issueRepo = ownerName + "/" + repositoryName;
-
 		try {
-			ResponseWithEntity response = httpGetRequest(apiRepoUrl + issueRepo);
-			if(response == null) {
-				logger.warn("no response");
-				return false;
-			}
-
 			// for Bitbucket
 			// check per API if the project is a fork 
-			// check for parent and if parent exists for full_name
-			logger.debug("checking if this repo (" + issueRepo + ") is a fork?");
-			ObjectMapper mapper = new ObjectMapper();
-			Map<String, Object> repoData = mapper.readValue(response.getEntity(), Map.class);
-			Object parentData = repoData.get("parent");
-
-			if(parentData != null) {
-				Map<String,String> parentD = (Map<String, String>) parentData;
-				issueRepo = parentD.get("full_name");
-				logger.debug("is forked from: " + issueRepo);
+			String issueRepo = resolveIssueRepository(getApiRepoUrl());
+			if(issueRepo == null) {
+				journal(ExportEvent.Type.FAILED, null, "issue repository not resolved");
+				return false;
 			}
+			journal(ExportEvent.Type.RESOLVED, null, issueRepo);
 
-			// TODO use isBugAlreadyReported to check if the bug was already reported
+			// if the bug was already reported show the existing issue
+			URI existingIssue = isBugAlreadyExported();
+			if(existingIssue != null) {
+				logger.info("bug " + bugInstance.getInstanceHash() + " was already exported to " + existingIssue);
+				exportedIssue = existingIssue;
+				journal(ExportEvent.Type.DUPLICATE, existingIssue, null);
+				openIssuePage(existingIssue);
+				return true;
+			}
 
 			// if the bug is not filed yet create a new issue
-			// https://github.com/<OWNER>/<REPOSITORY>/issues/new?title=<TITLE>&body=<DESCRIPTION>
+			// https://api.bitbucket.org/2.0/repositories/<OWNER>/<REPOSITORY>/issues
 
 			// TODO provide GUI to edit the issue before reporting
 
-			HttpPost request = new HttpPost("https://bitbucket.org/api/1.0/repositories/" + issueRepo + "/issues");
+			HttpPost request = new HttpPost(getApiRepoUrl() + issueRepo + "/issues");
 
-			List<NameValuePair> params = new ArrayList<NameValuePair>(2);
-			params.add(new BasicNameValuePair("title", getBugTitle()));
-			params.add(new BasicNameValuePair("content", getBugDescription()));
-			request.setEntity(new UrlEncodedFormEntity(params, "UTF-8"));
-
-			logger.debug("request line:" + request.getRequestLine());
-			CloseableHttpClient httpClient = HttpClientBuilder.create().build();
-			HttpResponse result = httpClient.execute(request);
+			String description = getBugDescription();
+			journal(ExportEvent.Type.RENDERED, null, description.length() + " characters");
+			Map<String, Object> content = new HashMap<String, Object>();
+			content.put("raw", description);
+			content.put("markup", "markdown");
+			Map<String, Object> issue = new HashMap<String, Object>();
+			issue.put("title", getBugTitle());
+			issue.put("content", content);
+			ObjectMapper mapper = new ObjectMapper();
+			request.setEntity(new StringEntity(mapper.writeValueAsString(issue), ContentType.APPLICATION_JSON));
 
-			// TODO open issue in webbrowser
+			if(logger.isDebugEnabled()) {
+				logger.debug("request line:" + request.getRequestLine());
+			}
+			try (CloseableHttpResponse result = SharedHttpClient.get().execute(request)) {
+				if(logger.isDebugEnabled()) {
+					logger.debug("request status: " + result.getStatusLine());
+				}
+				String entity = result.getEntity() != null ? EntityUtils.toString(result.getEntity(), "UTF-8") : null;
+				if(result.getStatusLine().getStatusCode() >= 300 || entity == null) {
+					logger.warn("could not create issue in " + issueRepo + ": " + result.getStatusLine());
+					journal(ExportEvent.Type.FAILED, null, result.getStatusLine().toString());
+					return false;
+				}
+				exportedIssue = getIssueURI(mapper.readValue(entity, Map.class));
+			}
+			if(session != null && exportedIssue != null) {
+				session.putExportedIssue(bugInstance.getInstanceHash(), exportedIssue);
+			}
 
+			logger.info("exported bug " + bugInstance.getInstanceHash() + " to " + exportedIssue);
+			journal(ExportEvent.Type.SUBMITTED, exportedIssue, null);
+			if(exportedIssue != null) {
+				openIssuePage(exportedIssue);
+			}
 			return true;
 
-		} catch (ParseException | IOException e) {
+		} catch (ParseException | IOException | URISyntaxException e) {
 			logger.error(e.getMessage(), e);
+			journal(ExportEvent.Type.FAILED, null, e.getMessage());
 		};
 
 		return false;
@@ -91,13 +130,181 @@ public class BitbucketExporter extends PlatformExporter implements IPlatformExpo
 	
 	/**
 	 * Check all issues of the project if a given bug was already exported/reported.
-	 * @todo not implemented yet
-	 * @todo cache result and used cache version to check for further queries
-	 * @param bug
-	 * @return Boolean if the bug has been reported before
+	 * 
+	 * The issues are filtered on the server for the Bug-ID, so the number of requests does not depend on the number of issues.
+	 * @see https://developer.atlassian.com/bitbucket/api/2/reference/meta/filtering
+	 * @return null if not exported an URI to the bug-report otherwise.
 	 */
+	@SuppressWarnings("unchecked")
 	public URI isBugAlreadyExported() {
+		String issueRepo = getIssueRepository();
+		if(issueRepo == null) {
+			return null;
+		}
+		if(session != null && session.getExportedIssue(bugInstance.getInstanceHash()) != null) {
+			return session.getExportedIssue(bugInstance.getInstanceHash());
+		}
+		try {
+			URIBuilder uriBuilder = new URIBuilder(getApiRepoUrl() + issueRepo + "/issues");
+			uriBuilder.addParameter("q", "content.raw ~ \"FindBugs Bug-ID: " + bugInstance.getInstanceHash() + "\"");
+			uriBuilder.addParameter("fields", "next,values.links.html.href");
+			
+			ObjectMapper mapper = new ObjectMapper();
+			// the results are filtered, so a further page is only requested if this one had no match
+			for(String url = uriBuilder.build().toString(); url != null;) {
+				ResponseWithEntity response = httpGetRequest(url);
+				if(response == null || response.getResponse().getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+					logger.warn("could not search issues of " + issueRepo);
+					return null;
+				}
+				Map<String, Object> page = mapper.readValue(response.getEntity(), Map.class);
+				for(Map<String, Object> issue : (List<Map<String, Object>>) page.get("values")) {
+					URI issueURI = getIssueURI(issue);
+					if(issueURI != null) {
+						if(session != null) {
+							session.putExportedIssue(bugInstance.getInstanceHash(), issueURI);
+						}
+						return issueURI;
+					}
+				}
+				url = (String) page.get("next");
+			}
+		} catch (ParseException | IOException | URISyntaxException e) {
+			logger.error(e.getMessage(), e);
+		}
 		return null;
 	}
+	
+	/**
+	 * Requests the next page in background while the current one is processed, on the threads of the PaginatedFetcher.
+	 * @param url the URL of the next page, may be null
+	 * @return null if there is no next page, the pending response otherwise
+	 */
+	private CompletableFuture<ResponseWithEntity> prefetch(final String url) {
+		if(url == null) {
+			return null;
+		}
+		return CompletableFuture.supplyAsync(() -> httpGetRequest(url), PaginatedFetcher.getExecutor());
+	}
+	
+	/**
+	 * Gets the URI of the web page of an issue of the Bitbucket API.
+	 * @param issue
+	 * @return null if the issue has no html link
+	 * @throws URISyntaxException
+	 */
+	@SuppressWarnings("unchecked")
+	private static URI getIssueURI(Map<String, Object> issue) throws URISyntaxException {
+		Map<String, Object> links = (Map<String, Object>) issue.get("links");
+		if(links == null || links.get("html") == null) {
+			return null;
+		}
+		return new URI(((Map<String, String>) links.get("html")).get("href"));
+	}
+	
+	/**
+	 * Links to lines of the pushed commit, e.g. https://bitbucket.org/OWNER/REPOSITORY/src/SHA/PATH#lines-10:20
+	 */
+	@Override
+	protected String getPermalink(String commit, String path, int start, int end) {
+		return "https://bitbucket.org/" + ownerName + "/" + repositoryName + "/src/" + commit + "/" + path
+				+ "#lines-" + start + (end > start ? ":" + end : "");
+	}
+	
+	@Override
+	public RepositoryProbe probeRepository(RemoteRepository remote, int timeoutMillis) {
+		return probeRepository(remote, getApiRepoUrl(), timeoutMillis);
+	}
+	
+	@Override
+	public String refreshIssueRepository() {
+		try {
+			return resolveIssueRepository(getApiRepoUrl(), false);
+		} catch (IOException e) {
+			logger.error(e.getMessage(), e);
+		}
+		return null;
+	}
+	
+	@Override
+	public String getIssueRepository() {
+		try {
+			return resolveIssueRepository(getApiRepoUrl());
+		} catch (IOException e) {
+			logger.error(e.getMessage(), e);
+		}
+		return null;
+	}
+	
+	/**
+	 * Fetches all issues carrying a Bug-ID that were updated after the cursor, filtered on the server.
+	 * @see https://developer.atlassian.com/bitbucket/api/2/reference/meta/filtering
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<IssueState> fetchIssueStates(IssueSyncCursor cursor) {
+		String issueRepo = getIssueRepository();
+		if(issueRepo == null) {
+			return null;
+		}
+		List<IssueState> states = new ArrayList<IssueState>();
+		try {
+			String query = "content.raw ~ \"FindBugs Bug-ID\"";
+			if(cursor.getSince() != null) {
+				query += " AND updated_on > " + cursor.getSince();
+			}
+			URIBuilder uriBuilder = new URIBuilder(getApiRepoUrl() + issueRepo + "/issues");
+			uriBuilder.addParameter("q", query);
+			uriBuilder.addParameter("sort", "updated_on");
+			uriBuilder.addParameter("pagelen", "50");
+			
+			ObjectMapper mapper = new ObjectMapper();
+			Map<String, String> headers = new HashMap<String, String>();
+			if(cursor.getEtag() != null) {
+				headers.put("If-None-Match", cursor.getEtag());
+			}
+			boolean firstPage = true;
+			CompletableFuture<ResponseWithEntity> pending = CompletableFuture.completedFuture(httpGetRequest(uriBuilder.build().toString(), headers));
+			while(pending != null) {
+				ResponseWithEntity response = pending.join();
+				if(response == null) {
+					return null;
+				}
+				int status = response.getResponse().getStatusLine().getStatusCode();
+				if(status == HttpStatus.SC_NOT_MODIFIED) {
+					if(logger.isDebugEnabled()) {
+						logger.debug("issues of " + issueRepo + " not modified since last synchronisation");
+					}
+					return states;
+				} else if(status != HttpStatus.SC_OK) {
+					logger.warn("could not fetch issues of " + issueRepo + ": " + response.getResponse().getStatusLine());
+					return null;
+				}
+				if(firstPage) {
+					Header etag = response.getResponse().getFirstHeader("ETag");
+					cursor.setEtag(etag != null ? etag.getValue() : null);
+					firstPage = false;
+				}
+				
+				Map<String, Object> page = mapper.readValue(response.getEntity(), Map.class);
+				pending = prefetch((String) page.get("next"));
+				for(Map<String, Object> issue : (List<Map<String, Object>>) page.get("values")) {
+					cursor.advanceSince((String) issue.get("updated_on"));
+					Map<String, Object> content = (Map<String, Object>) issue.get("content");
+					String bugId = getBugId(content != null ? (String) content.get("raw") : null);
+					URI issueURI = getIssueURI(issue);
+					if(bugId == null || issueURI == null) {
+						continue;
+					}
+					String state = (String) issue.get("state");
+					states.add(new IssueState(bugId, issueURI, state, closedStates.contains(state)));
+				}
+			}
+		} catch (ParseException | IOException | URISyntaxException e) {
+			logger.error(e.getMessage(), e);
+			return null;
+		}
+		return states;
+	}
 
 }
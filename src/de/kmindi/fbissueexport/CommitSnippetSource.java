@@ -0,0 +1,326 @@
+package de.kmindi.fbissueexport;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.jgit.errors.LargeObjectException;
+import org.eclipse.jgit.lib.BranchConfig;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.util.RawParseUtils;
+
+/**
+ * Reads source lines from the commit the remote-tracking branch points to instead of the working tree.
+ *
+ * Snippets then show what is pushed, and the issue can link to the exact lines of that commit.
+ * Every blob is read once and shared by all bugs of the same file; blobs stay cached as long as the file
+ * is unchanged in the commit, even after the remote-tracking branch moved. Files which differ between the working
+ * tree and the commit are not read from the commit, the line numbers of their bugs belong to the working tree.
+ *
+ * Enabled by the preference "snippet.commitPinned".
+ *
+ * @author Kai Mindermann
+ */
+public class CommitSnippetSource {
+
+	private static Logger logger = Logger.getLogger(CommitSnippetSource.class);
+	private static final int maxCachedBlobs = 32;
+
+	/**
+	 * Blobs larger than this are not read, the working tree snippet is used for them.
+	 */
+	private static final int maxBlobSize = 4 * 1024 * 1024;
+
+	/**
+	 * Time after which the remote-tracking branch is resolved again, exports in a row use the same commit.
+	 */
+	private static final long refreshInterval = 10 * 1000;
+
+	private File gitDir;
+	private String remoteName;
+	private Repository repository = null;
+	private ObjectId commitId = null;
+	private long lastRefresh = 0;
+	private Map<String, ObjectId> blobIds = new HashMap<String, ObjectId>();
+	private Map<String, WorkTreeBlob> workTreeBlobs = new HashMap<String, WorkTreeBlob>();
+	private Map<ObjectId, String[]> blobs = new LinkedHashMap<ObjectId, String[]>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ObjectId, String[]> eldest) {
+			return size() > maxCachedBlobs;
+		}
+	};
+
+	/**
+	 * A file as it is in the commit, with the commit it was read from.
+	 */
+	public static class PinnedFile {
+		private final String commit;
+		private final String path;
+		private final String[] lines;
+
+		private PinnedFile(String commit, String path, String[] lines) {
+			this.commit = commit;
+			this.path = path;
+			this.lines = lines;
+		}
+
+		/**
+		 * Getter for the commit
+		 * @return the SHA-1 of the commit the lines were read from
+		 */
+		public String getCommit() {
+			return commit;
+		}
+
+		/**
+		 * Getter for the path
+		 * @return the path relative to the work tree with "/" as separator
+		 */
+		public String getPath() {
+			return path;
+		}
+
+		/**
+		 * Getter for the lines
+		 * @return the lines of the file in the commit, shared by all callers and must not be changed
+		 */
+		public String[] getLines() {
+			return lines;
+		}
+	}
+
+	/**
+	 * Blob id of a working tree file, valid as long as the file has the same size and modification time.
+	 */
+	private static class WorkTreeBlob {
+		private final long lastModified;
+		private final long length;
+		private final ObjectId id;
+
+		private WorkTreeBlob(long lastModified, long length, ObjectId id) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.id = id;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * @param gitDir the git directory of the repository
+	 * @param remoteName the name of the remote whose tracking branch is read
+	 */
+	public CommitSnippetSource(File gitDir, String remoteName) {
+		this.gitDir = gitDir;
+		this.remoteName = remoteName;
+	}
+
+	/**
+	 * Checks if snippets should be read from the remote-tracking commit.
+	 * @return the preference "snippet.commitPinned", false outside of a running platform
+	 */
+	public static boolean isEnabled() {
+		return Platform.isRunning() && InstanceScope.INSTANCE.getNode("de.kmindi.fbissueexport").getBoolean("snippet.commitPinned", false);
+	}
+
+	/**
+	 * Resolves the commit of the remote-tracking branch again, so newly fetched commits are used.
+	 * @return the id of the commit or null if the remote has no tracking branch
+	 */
+	public synchronized String refreshCommit() {
+		lastRefresh = System.currentTimeMillis();
+		try {
+			ObjectId newCommitId = resolveCommit(getRepository());
+			if(newCommitId == null || !newCommitId.equals(commitId)) {
+				blobIds.clear();
+			}
+			commitId = newCommitId;
+		} catch (IOException e) {
+			logger.error(e.getMessage(), e);
+			commitId = null;
+		}
+		return commitId != null ? commitId.getName() : null;
+	}
+
+	/**
+	 * Gets the id of the commit snippets are read from, resolves it again if it is older than the refresh interval.
+	 * @return the SHA-1 of the commit or null if the remote has no tracking branch
+	 */
+	public synchronized String getCommit() {
+		if(System.currentTimeMillis() - lastRefresh > refreshInterval) {
+			return refreshCommit();
+		}
+		return commitId != null ? commitId.getName() : null;
+	}
+
+	/**
+	 * Gets a file as it is in the commit, resolves the commit and reads the lines under one lock.
+	 * @param file the file in the working tree
+	 * @return null if the file is not part of the commit or differs from it in the working tree,
+	 * the lines of the working tree file do not belong to the commit then
+	 */
+	public synchronized PinnedFile getFile(File file) {
+		String commit = getCommit();
+		String path = getRepositoryPath(file);
+		if(commit == null || path == null) {
+			return null;
+		}
+		try {
+			ObjectId blobId = blobIds.get(path);
+			if(blobId == null && !blobIds.containsKey(path)) {
+				RevWalk revWalk = new RevWalk(getRepository());
+				try {
+					RevCommit revCommit = revWalk.parseCommit(commitId);
+					TreeWalk treeWalk = TreeWalk.forPath(getRepository(), path, revCommit.getTree());
+					if(treeWalk != null) {
+						blobId = treeWalk.getObjectId(0);
+						treeWalk.release();
+					}
+				} finally {
+					revWalk.release();
+				}
+				blobIds.put(path, blobId);
+			}
+			if(blobId == null || file.length() > maxBlobSize) {
+				return null;
+			}
+			if(!blobId.equals(getWorkTreeBlobId(file, path))) {
+				if(logger.isDebugEnabled()) {
+					logger.debug(path + " differs from " + blobId.getName() + " in commit " + commit);
+				}
+				return null;
+			}
+			String[] lines = blobs.get(blobId);
+			if(lines == null) {
+				lines = RawParseUtils.decode(getRepository().open(blobId, Constants.OBJ_BLOB).getCachedBytes(maxBlobSize)).split("\r?\n", -1);
+				blobs.put(blobId, lines);
+				if(logger.isDebugEnabled()) {
+					logger.debug("read blob " + blobId.getName() + " of " + path);
+				}
+			}
+			return new PinnedFile(commit, path, lines);
+		} catch (LargeObjectException e) {
+			logger.warn(file + " is too large for a commit-pinned snippet: " + e.getMessage());
+			return null;
+		} catch (IOException e) {
+			logger.error(e.getMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Closes the repository, it is opened again on further use.
+	 */
+	public synchronized void close() {
+		if(repository != null) {
+			repository.close();
+			repository = null;
+		}
+	}
+
+	private Repository getRepository() throws IOException {
+		if(repository == null) {
+			repository = new RepositoryBuilder().setGitDir(gitDir).build();
+		}
+		return repository;
+	}
+
+	/**
+	 * Gets the path of a file relative to the work tree, as used in the commit and in links to it.
+	 * @return the path with "/" as separator or null if the file is not inside the work tree
+	 */
+	private String getRepositoryPath(File file) {
+		try {
+			String workTree = getRepository().getWorkTree().getCanonicalPath() + File.separator;
+			String path = file.getCanonicalPath();
+			if(!path.startsWith(workTree)) {
+				return null;
+			}
+			return path.substring(workTree.length()).replace(File.separatorChar, '/');
+		} catch (IOException | IllegalStateException e) {
+			logger.warn("could not get repository path of " + file + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the blob id of the working tree file, hashed again only if its size or modification time changed.
+	 * Line endings converted on checkout (core.autocrlf) are normalized before hashing.
+	 */
+	private ObjectId getWorkTreeBlobId(File file, String path) throws IOException {
+		WorkTreeBlob cached = workTreeBlobs.get(path);
+		if(cached != null && cached.lastModified == file.lastModified() && cached.length == file.length()) {
+			return cached.id;
+		}
+		long lastModified = file.lastModified();
+		byte[] content = Files.readAllBytes(file.toPath());
+		ObjectInserter.Formatter formatter = new ObjectInserter.Formatter();
+		ObjectId id = formatter.idFor(Constants.OBJ_BLOB, content);
+		if(!id.equals(blobIds.get(path))) {
+			byte[] normalized = toLf(content);
+			if(normalized != null) {
+				id = formatter.idFor(Constants.OBJ_BLOB, normalized);
+			}
+		}
+		workTreeBlobs.put(path, new WorkTreeBlob(lastModified, content.length, id));
+		return id;
+	}
+
+	/**
+	 * Replaces CRLF line endings by LF.
+	 * @return null if the content has no CRLF line ending
+	 */
+	private static byte[] toLf(byte[] content) {
+		byte[] normalized = new byte[content.length];
+		int length = 0;
+		for(int i = 0; i < content.length; i++) {
+			if(content[i] != '\r' || i + 1 == content.length || content[i + 1] != '\n') {
+				normalized[length++] = content[i];
+			}
+		}
+		return length < content.length ? Arrays.copyOf(normalized, length) : null;
+	}
+
+	/**
+	 * Resolves the commit of the remote-tracking branch: the upstream of the current branch if it belongs to the remote,
+	 * otherwise the branch the HEAD of the remote points to, otherwise its master.
+	 */
+	private ObjectId resolveCommit(Repository repository) throws IOException {
+		String remotePrefix = Constants.R_REMOTES + remoteName + "/";
+		String branch = repository.getBranch();
+		if(branch != null) {
+			String upstream = new BranchConfig(repository.getConfig(), branch).getRemoteTrackingBranch();
+			if(upstream != null && upstream.startsWith(remotePrefix)) {
+				ObjectId id = repository.resolve(upstream + "^{commit}");
+				if(id != null) {
+					return id;
+				}
+			}
+		}
+		for(String ref : new String[] { remotePrefix + Constants.HEAD, remotePrefix + Constants.MASTER }) {
+			ObjectId id = repository.resolve(ref + "^{commit}");
+			if(id != null) {
+				return id;
+			}
+		}
+		if(logger.isDebugEnabled()) {
+			logger.debug("no remote-tracking branch found for remote " + remoteName + " in " + gitDir);
+		}
+		return null;
+	}
+}
@@ -1,8 +1,5 @@
 package de.kmindi.fbissueexport;
 
-import java.io.File;
-import java.io.IOException;
-
 import org.apache.log4j.Logger;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.ProjectScope;
@@ -10,8 +7,6 @@ import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.eclipse.core.runtime.preferences.IScopeContext;
 import org.eclipse.jface.dialogs.IDialogConstants;
 import org.eclipse.jface.dialogs.MessageDialog;
-import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.lib.RepositoryBuilder;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.PlatformUI;
 import org.osgi.service.prefs.BackingStoreException;
@@ -30,7 +25,9 @@ public class Export {
 	private static Logger logger = Logger.getLogger(Export.class);
 
 	public Export(BugInstance bug, IProject project) {
-		logger.debug("new Export instance created for Bug-ID: " + bug.getInstanceHash() + "in project " + project.getName());
+		if(logger.isDebugEnabled()) {
+			logger.debug("new Export instance created for Bug-ID: " + bug.getInstanceHash() + "in project " + project.getName());
+		}
 
 		IScopeContext projectScope = new ProjectScope(project);
 		IEclipsePreferences projectPreferences = projectScope.getNode("de.kmindi.fbissueexport");
@@ -62,32 +59,24 @@ public class Export {
 			}
 		}
 
-		// TODO only search once for possible project issue tracker
-		// save it in preferences and use that
-
-		// get file location this bug is found in
-		File file = ProjectUtils.getSourceFile(project, bug);
-		logger.debug("searching for versioned directory, starting at: " + file);
-
-		if(new RepositoryBuilder().findGitDir(file).getGitDir() != null) {
-			logger.debug("found versioned directory" + file);
-			try {
-				// get remotes and check if it contains github(or other popular platforms)
-				Repository repository = new RepositoryBuilder().findGitDir(file).build();
-				//Config storedConfig = repository.getConfig();
-				//Set<String> remotes = storedConfig.getSubsections("remote");
-
-				// parse url for popular social coding platforms
-				IPlatformExporter pe = PlatformExporterFactory.matchPlatform(repository.getConfig(), bug, project);
-				if(pe != null) {  
-					pe.exportBug();
-				}
-
-			} catch (IOException e) {
-				logger.error(e.getMessage(), e);
+		// the git discovery, the platform and its state are shared by all projects in the same repository
+		ExporterSession session = ExporterSessionRegistry.getSession(project);
+		if(session == null) {
+			logger.debug("no versioned directory with a supported platform found");
+			ExportJournal.record(ExportEvent.Type.FAILED, bug.getInstanceHash(), project.getName(), null, "no supported platform");
+			return;
+		}
+		if(!session.beginExport(bug.getInstanceHash())) {
+			logger.info("bug " + bug.getInstanceHash() + " is already being exported");
+			return;
+		}
+		try {
+			IPlatformExporter pe = PlatformExporterFactory.createExporter(session, bug, project);
+			if(pe != null) {  
+				pe.exportBug();
 			}
-		} else {
-			logger.debug("no versioned directory found");
+		} finally {
+			session.finishExport(bug.getInstanceHash());
 		}
 	}
 }
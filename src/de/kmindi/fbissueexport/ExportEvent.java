@@ -0,0 +1,134 @@
+package de.kmindi.fbissueexport;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Class for an entry of the ExportJournal.
+ *
+ * @author Kai Mindermann
+ */
+public class ExportEvent {
+
+	/**
+	 * Steps of an export.
+	 */
+	public enum Type {
+		/** the issue repository of the bug was resolved, the message is "OWNER/REPOSITORY" */
+		RESOLVED,
+		/** the description of the bug was rendered for an issue, the message is its length */
+		RENDERED,
+		/** the issue was created or its form was shown to the user */
+		SUBMITTED,
+		/** the bug was exported before, the issue is the existing one */
+		DUPLICATE,
+		/** the export failed, the message tells why */
+		FAILED
+	}
+
+	private long time;
+	private Type type;
+	private String bugId;
+	private String repository;
+	private String issue;
+	private String message;
+
+	/**
+	 * Constructor.
+	 * @param time milliseconds since the epoch
+	 * @param type
+	 * @param bugId the FindBugs Bug-ID
+	 * @param repository the repository the bug is exported from, e.g. "github.com/OWNER/REPOSITORY"
+	 * @param issue the URI of the issue or null
+	 * @param message details depending on the type or null
+	 */
+	public ExportEvent(long time, Type type, String bugId, String repository, String issue, String message) {
+		this.time = time;
+		this.type = type;
+		this.bugId = bugId;
+		this.repository = repository;
+		this.issue = issue;
+		this.message = message;
+	}
+
+	/**
+	 * Creates an event from an entry of a journal file.
+	 * @param entry
+	 * @return the event
+	 * @throws IllegalArgumentException if the entry has no valid type
+	 */
+	public static ExportEvent fromMap(Map<String, Object> entry) {
+		Number time = (Number) entry.get("time");
+		return new ExportEvent(time != null ? time.longValue() : 0, Type.valueOf((String) entry.get("type")), (String) entry.get("bugId"),
+				(String) entry.get("repository"), (String) entry.get("issue"), (String) entry.get("message"));
+	}
+
+	/**
+	 * Gets the entry written to a journal file, fields which are null are left out.
+	 * @return the entry
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> entry = new LinkedHashMap<String, Object>();
+		entry.put("time", time);
+		entry.put("type", type.name());
+		entry.put("bugId", bugId);
+		if(repository != null) {
+			entry.put("repository", repository);
+		}
+		if(issue != null) {
+			entry.put("issue", issue);
+		}
+		if(message != null) {
+			entry.put("message", message);
+		}
+		return entry;
+	}
+
+	/**
+	 * Getter for the time
+	 * @return milliseconds since the epoch
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * Getter for the type
+	 * @return the step of the export
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Getter for the Bug-ID
+	 * @return the FindBugs Bug-ID
+	 */
+	public String getBugId() {
+		return bugId;
+	}
+
+	/**
+	 * Getter for the repository
+	 * @return the repository the bug is exported from
+	 */
+	public String getRepository() {
+		return repository;
+	}
+
+	/**
+	 * Getter for the issue
+	 * @return the URI of the issue or null
+	 */
+	public String getIssue() {
+		return issue;
+	}
+
+	/**
+	 * Getter for the message
+	 * @return details depending on the type or null
+	 */
+	public String getMessage() {
+		return message;
+	}
+}
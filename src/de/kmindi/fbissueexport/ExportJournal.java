@@ -0,0 +1,207 @@
+package de.kmindi.fbissueexport;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Journal of the steps of all exports, written as JSON Lines (one ExportEvent per line).
+ *
+ * Recording an event only puts it into a bounded ring buffer, a background thread writes the buffer to the file.
+ * If the writer falls behind, new events are dropped instead of slowing down the export. While the journal is not
+ * started, recording costs a single volatile read.
+ *
+ * The journal can be replayed to audit exports or to find the bugs whose export did not finish.
+ *
+ * @author Kai Mindermann
+ */
+public class ExportJournal {
+
+	private static Logger logger = Logger.getLogger(ExportJournal.class);
+	private static final int bufferSize = 4096;
+
+	private static volatile boolean enabled = false;
+	private static BlockingQueue<ExportEvent> buffer = new ArrayBlockingQueue<ExportEvent>(bufferSize);
+	private static AtomicLong droppedEvents = new AtomicLong();
+	private static volatile Thread writerThread = null;
+
+	/**
+	 * Checks if events are recorded, callers can skip preparing an event otherwise.
+	 * @return true if the journal is started
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Records an event, does nothing if the journal is not started.
+	 * @param type
+	 * @param bugId the FindBugs Bug-ID
+	 * @param repository the repository the bug is exported from
+	 * @param issue the URI of the issue or null
+	 * @param message details depending on the type or null
+	 */
+	public static void record(ExportEvent.Type type, String bugId, String repository, URI issue, String message) {
+		if(!enabled) {
+			return;
+		}
+		ExportEvent event = new ExportEvent(System.currentTimeMillis(), type, bugId, repository, issue != null ? issue.toString() : null, message);
+		if(!buffer.offer(event)) {
+			droppedEvents.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Starts the background writer, which appends to the journal file.
+	 * @param journalFile
+	 */
+	public static synchronized void start(final File journalFile) {
+		if(writerThread != null) {
+			return;
+		}
+		writerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				write(journalFile);
+			}
+		}, "FindBugs issue export journal");
+		writerThread.setDaemon(true);
+		enabled = true;
+		writerThread.start();
+		logger.info("export journal started: " + journalFile);
+	}
+
+	/**
+	 * Stops recording, the buffered events are written before the writer ends.
+	 */
+	public static void stop() {
+		Thread thread;
+		synchronized(ExportJournal.class) {
+			thread = writerThread;
+			writerThread = null;
+			enabled = false;
+		}
+		if(thread == null) {
+			return;
+		}
+		try {
+			thread.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Reads all events of a journal file, malformed lines (e.g. the last one after a crash) are skipped.
+	 * @param journalFile
+	 * @return the events in the order they were recorded
+	 * @throws IOException if the file could not be read
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<ExportEvent> replay(File journalFile) throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		List<ExportEvent> events = new ArrayList<ExportEvent>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), "UTF-8"))) {
+			for(String line = null; (line = reader.readLine()) != null;) {
+				if(line.isEmpty()) {
+					continue;
+				}
+				try {
+					events.add(ExportEvent.fromMap(mapper.readValue(line, Map.class)));
+				} catch (IOException | RuntimeException e) {
+					logger.warn("skipping malformed journal entry: " + e.getMessage());
+				}
+			}
+		}
+		return events;
+	}
+
+	/**
+	 * Gets the bugs whose last export did not end with a created or found issue, e.g. to export them again.
+	 * A RENDERED event after a created or found issue (e.g. of older journals, which recorded reports too) starts no new export.
+	 * @param events replayed events
+	 * @return the Bug-IDs in the order of their last event
+	 */
+	public static Set<String> getUnfinishedBugIds(List<ExportEvent> events) {
+		Map<String, ExportEvent.Type> lastTypes = new LinkedHashMap<String, ExportEvent.Type>();
+		for(ExportEvent event : events) {
+			if(event.getBugId() != null) {
+				ExportEvent.Type lastType = lastTypes.get(event.getBugId());
+				if(event.getType() == ExportEvent.Type.RENDERED && (lastType == ExportEvent.Type.SUBMITTED || lastType == ExportEvent.Type.DUPLICATE)) {
+					continue;
+				}
+				lastTypes.remove(event.getBugId());
+				lastTypes.put(event.getBugId(), event.getType());
+			}
+		}
+		Set<String> unfinished = new LinkedHashSet<String>();
+		for(Map.Entry<String, ExportEvent.Type> entry : lastTypes.entrySet()) {
+			if(entry.getValue() != ExportEvent.Type.SUBMITTED && entry.getValue() != ExportEvent.Type.DUPLICATE) {
+				unfinished.add(entry.getKey());
+			}
+		}
+		return unfinished;
+	}
+
+	/**
+	 * Loop of the background writer, writes the buffer in batches until the journal is stopped and the buffer is empty.
+	 * A writer that fails stops the journal, so it can be started again.
+	 */
+	private static void write(File journalFile) {
+		ObjectMapper mapper = new ObjectMapper();
+		List<ExportEvent> batch = new ArrayList<ExportEvent>();
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), "UTF-8"))) {
+			while(writerThread == Thread.currentThread() || !buffer.isEmpty()) {
+				ExportEvent first = buffer.poll(1, TimeUnit.SECONDS);
+				if(first == null) {
+					continue;
+				}
+				batch.add(first);
+				buffer.drainTo(batch);
+				for(ExportEvent event : batch) {
+					writer.write(mapper.writeValueAsString(event.toMap()));
+					writer.write("\n");
+				}
+				writer.flush();
+				batch.clear();
+				long dropped = droppedEvents.getAndSet(0);
+				if(dropped > 0) {
+					logger.warn("export journal dropped " + dropped + " events");
+				}
+			}
+		} catch (IOException e) {
+			logger.error("export journal stopped: " + e.getMessage(), e);
+		} catch (InterruptedException e) {
+			logger.warn("export journal writer interrupted");
+		} finally {
+			synchronized(ExportJournal.class) {
+				if(writerThread == Thread.currentThread()) {
+					writerThread = null;
+					enabled = false;
+					buffer.clear();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package de.kmindi.fbissueexport;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * State of the exports to one issue repository, shared by all projects of the workspace in the same git repository.
+ * 
+ * Holds the resolved issue repository, the index of already exported bugs, a cache of HTTP responses
+ * for conditional requests, the bugs currently being exported and the source of commit-pinned snippets.
+ * 
+ * @see ExporterSessionRegistry
+ * @author Kai Mindermann
+ */
+public class ExporterSession {
+	
+	private static final int maxCachedResponses = 64;
+	
+	private File gitDir;
+	private RemoteRepository remote;
+	private volatile String issueRepository = null;
+	private Map<String, URI> exportedBugs = new ConcurrentHashMap<String, URI>();
+	private volatile String exportedBugsIndexedSince = null;
+	private CommitSnippetSource commitSnippetSource = null;
+	private Set<String> pendingBugs = Collections.synchronizedSet(new HashSet<String>());
+	private Map<String, ResponseWithEntity> responseCache = Collections.synchronizedMap(new LinkedHashMap<String, ResponseWithEntity>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ResponseWithEntity> eldest) {
+			return size() > maxCachedResponses;
+		}
+	});
+	
+	/**
+	 * Constructor.
+	 * @param gitDir the git directory of the repository, null if the session is not bound to a repository
+	 * @param remote the remote pointing to the platform
+	 */
+	ExporterSession(File gitDir, RemoteRepository remote) {
+		this.gitDir = gitDir;
+		this.remote = remote;
+	}
+
+	/**
+	 * Getter for the git directory
+	 * @return the git directory of the repository
+	 */
+	public File getGitDir() {
+		return gitDir;
+	}
+
+	/**
+	 * Getter for the remote
+	 * @return the remote pointing to the platform
+	 */
+	public RemoteRepository getRemote() {
+		return remote;
+	}
+
+	/**
+	 * Getter for the issue repository
+	 * @return "OWNER/REPOSITORY" issues are reported to or null if not resolved yet
+	 */
+	public String getIssueRepository() {
+		return issueRepository;
+	}
+
+	/**
+	 * Setter for the issue repository
+	 * @param issueRepository "OWNER/REPOSITORY" issues are reported to
+	 */
+	public void setIssueRepository(String issueRepository) {
+		this.issueRepository = issueRepository;
+	}
+	
+	/**
+	 * Gets the issue a bug was exported to.
+	 * @param bugId the FindBugs Bug-ID
+	 * @return null if not known, the URI of the issue otherwise
+	 */
+	public URI getExportedIssue(String bugId) {
+		return exportedBugs.get(bugId);
+	}
+	
+	/**
+	 * Adds an exported bug to the index.
+	 * @param bugId the FindBugs Bug-ID
+	 * @param issue the URI of the issue
+	 */
+	public void putExportedIssue(String bugId, URI issue) {
+		exportedBugs.put(bugId, issue);
+	}
+
+	/**
+	 * Gets the time up to which all issues of the platform are in the index of exported bugs.
+	 * @return ISO 8601 timestamp or null if the index was not built from a full scan yet
+	 */
+	public String getExportedBugsIndexedSince() {
+		return exportedBugsIndexedSince;
+	}
+
+	/**
+	 * Sets the time up to which all issues of the platform are in the index of exported bugs.
+	 * @param exportedBugsIndexedSince ISO 8601 timestamp
+	 */
+	public void setExportedBugsIndexedSince(String exportedBugsIndexedSince) {
+		this.exportedBugsIndexedSince = exportedBugsIndexedSince;
+	}
+	
+	/**
+	 * Marks a bug as being exported.
+	 * @param bugId the FindBugs Bug-ID
+	 * @return false if the bug is already being exported (e.g. from another project)
+	 */
+	public boolean beginExport(String bugId) {
+		return pendingBugs.add(bugId);
+	}
+	
+	/**
+	 * Marks the export of a bug as finished.
+	 * @param bugId the FindBugs Bug-ID
+	 */
+	public void finishExport(String bugId) {
+		pendingBugs.remove(bugId);
+	}
+	
+	/**
+	 * Gets a cached response which carries an ETag.
+	 * @param url
+	 * @return null if nothing is cached for the URL
+	 */
+	public ResponseWithEntity getCachedResponse(String url) {
+		return responseCache.get(url);
+	}
+	
+	/**
+	 * Caches a response which carries an ETag, so the next request can be conditional.
+	 * @param url
+	 * @param response
+	 */
+	public void putCachedResponse(String url, ResponseWithEntity response) {
+		responseCache.put(url, response);
+	}
+	
+	/**
+	 * Gets the source of snippets read from the remote-tracking commit, creates it on first use.
+	 * @return the source shared by all exports of the session, null if the session has no git directory
+	 */
+	public synchronized CommitSnippetSource getCommitSnippetSource() {
+		if(commitSnippetSource == null && gitDir != null) {
+			commitSnippetSource = new CommitSnippetSource(gitDir, remote.getRemoteName());
+		}
+		return commitSnippetSource;
+	}
+	
+	/**
+	 * Releases the resources of the session.
+	 */
+	synchronized void close() {
+		if(commitSnippetSource != null) {
+			commitSnippetSource.close();
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package de.kmindi.fbissueexport;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+
+/**
+ * Registry of the ExporterSessions of the workspace.
+ * 
+ * Many eclipse projects can be located in the same git repository. The git discovery and the remote resolution
+ * are done once per project location respectively git directory, and all projects mapped to the same
+ * repository and remote share one session. So the work for an export grows with the number of repositories, not projects.
+ * 
+ * @author Kai Mindermann
+ */
+public class ExporterSessionRegistry {
+	
+	private static Logger logger = Logger.getLogger(ExporterSessionRegistry.class);
+	private static Map<String, File> gitDirs = new ConcurrentHashMap<String, File>();
+	private static Map<File, RemoteRepository> remotes = new ConcurrentHashMap<File, RemoteRepository>();
+	private static Map<String, ExporterSession> sessions = new ConcurrentHashMap<String, ExporterSession>();
+	
+	/**
+	 * Gets the session for the repository a project is located in.
+	 * @param project
+	 * @return null if the project is not versioned with git or has no remote on a supported platform
+	 */
+	public static ExporterSession getSession(IProject project) {
+		if(project.getLocation() == null) {
+			return null;
+		}
+		File gitDir = getGitDir(project.getLocation().toFile());
+		if(gitDir == null) {
+			if(logger.isDebugEnabled()) {
+				logger.debug("no versioned directory found for project " + project.getName());
+			}
+			return null;
+		}
+		RemoteRepository remote = getRemote(gitDir);
+		if(remote == null) {
+			if(logger.isDebugEnabled()) {
+				logger.debug("no supported platform found for " + gitDir);
+			}
+			return null;
+		}
+		String key = gitDir.getPath() + "|" + remote;
+		ExporterSession session = sessions.get(key);
+		if(session == null) {
+			sessions.putIfAbsent(key, new ExporterSession(gitDir, remote));
+			session = sessions.get(key);
+			if(logger.isDebugEnabled()) {
+				logger.debug("new exporter session for " + key);
+			}
+		}
+		return session;
+	}
+	
+	/**
+	 * Gets the session for a remote which is not found through a project, e.g. for exports outside of eclipse.
+	 * Sessions without git directory have no commit-pinned snippets.
+	 * @param remote the remote pointing to the platform
+	 * @param apiBaseUrl the URL of the API the exporters of the session use, ending with "/"
+	 * @return the session shared by all callers with the same remote and API
+	 */
+	public static ExporterSession getSession(RemoteRepository remote, String apiBaseUrl) {
+		String key = apiBaseUrl + "|" + remote;
+		ExporterSession session = sessions.get(key);
+		if(session == null) {
+			sessions.putIfAbsent(key, new ExporterSession(null, remote));
+			session = sessions.get(key);
+			if(logger.isDebugEnabled()) {
+				logger.debug("new exporter session for " + key);
+			}
+		}
+		return session;
+	}
+	
+	/**
+	 * Removes all sessions and cached discoveries, e.g. if the plugin is stopped.
+	 */
+	public static void clear() {
+		for(ExporterSession session : sessions.values()) {
+			session.close();
+		}
+		sessions.clear();
+		remotes.clear();
+		gitDirs.clear();
+	}
+	
+	/**
+	 * Gets the git directory a location belongs to, only successful discoveries are cached.
+	 * @param location
+	 * @return null if the location is not versioned with git
+	 */
+	private static File getGitDir(File location) {
+		File gitDir = gitDirs.get(location.getPath());
+		if(gitDir == null) {
+			if(logger.isDebugEnabled()) {
+				logger.debug("searching for versioned directory, starting at: " + location);
+			}
+			gitDir = new RepositoryBuilder().findGitDir(location).getGitDir();
+			if(gitDir != null) {
+				gitDirs.put(location.getPath(), gitDir);
+			}
+		}
+		return gitDir;
+	}
+	
+	/**
+	 * Gets the remote of a repository bugs are reported to, only successful matches are cached.
+	 * @see PlatformResolver
+	 * @param gitDir
+	 * @return null if no remote matches
+	 */
+	private static RemoteRepository getRemote(File gitDir) {
+		RemoteRepository remote = remotes.get(gitDir);
+		if(remote == null) {
+			try {
+				Repository repository = new RepositoryBuilder().setGitDir(gitDir).build();
+				remote = PlatformResolver.resolve(gitDir, repository.getConfig());
+				repository.close();
+			} catch (IOException e) {
+				logger.error(e.getMessage(), e);
+			}
+			if(remote != null) {
+				remotes.put(gitDir, remote);
+			}
+		}
+		return remote;
+	}
+}
@@ -0,0 +1,269 @@
+package de.kmindi.fbissueexport;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.apache.log4j.Logger;
+import org.eclipse.core.resources.IProject;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugRankCategory;
+
+/**
+ * PlatformExporter writing a collection of bugs to a report file, for projects without a usable issue tracker.
+ *
+ * The bugs are rendered in chunks on all cores (using the same descriptions as the issue exports, HTML shows the same parts as
+ * markup) while the previous chunk is written through a buffered channel. The output keeps the order of the collection and only two chunks are held in memory.
+ *
+ * @author Kai Mindermann
+ *
+ */
+public class FileReportExporter extends PlatformExporter implements IPlatformExporter {
+
+	private static Logger logger = Logger.getLogger(FileReportExporter.class);
+
+	/**
+	 * Supported report formats.
+	 */
+	public enum Format {
+		MARKDOWN, HTML, CSV, JSON_LINES;
+
+		/**
+		 * Gets the format matching the extension of a file name.
+		 * @param fileName
+		 * @return the matching format, MARKDOWN if the extension is unknown
+		 */
+		public static Format fromFileName(String fileName) {
+			String name = fileName.toLowerCase();
+			if(name.endsWith(".html") || name.endsWith(".htm")) {
+				return HTML;
+			} else if(name.endsWith(".csv")) {
+				return CSV;
+			} else if(name.endsWith(".jsonl") || name.endsWith(".json")) {
+				return JSON_LINES;
+			}
+			return MARKDOWN;
+		}
+	}
+
+	private static final int chunkSize = 16 * Runtime.getRuntime().availableProcessors();
+	private Iterable<BugInstance> bugs;
+	private Map<BugInstance, IProject> bugProjects = null;
+	private File reportFile;
+	private Format format;
+	private ObjectMapper mapper = new ObjectMapper();
+
+	/**
+	 * Constructor.
+	 * @param bugs the bugs to write, in the order of the report
+	 * @param project the project the bugs were found in
+	 * @param reportFile the file to write, gets replaced if existing
+	 * @param format the format of the report
+	 */
+	public FileReportExporter(Iterable<BugInstance> bugs, IProject project, File reportFile, Format format) {
+		super(null, null, null, project);
+		this.bugs = bugs;
+		this.reportFile = reportFile;
+		this.format = format;
+	}
+
+	/**
+	 * Constructor for a report of bugs from different projects.
+	 * @param bugProjects the bugs to write in the order of the report, with the project each bug was found in
+	 * @param reportFile the file to write, gets replaced if existing
+	 * @param format the format of the report
+	 */
+	public FileReportExporter(Map<BugInstance, IProject> bugProjects, File reportFile, Format format) {
+		this(bugProjects.keySet(), null, reportFile, format);
+		this.bugProjects = bugProjects;
+	}
+
+	/**
+	 * Writes all bugs to the report file.
+	 * @return true if the report was written completely
+	 */
+	@Override
+	public boolean exportBug() {
+		try (FileChannel channel = FileChannel.open(reportFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+				Writer writer = new BufferedWriter(Channels.newWriter(channel, "UTF-8"), 64 * 1024)) {
+			writer.write(getHeader());
+
+			// render the next chunk while writing the current one
+			Iterator<BugInstance> it = bugs.iterator();
+			CompletableFuture<List<String>> pending = null;
+			int count = 0;
+			while(it.hasNext()) {
+				final List<BugInstance> chunk = new ArrayList<BugInstance>(chunkSize);
+				while(it.hasNext() && chunk.size() < chunkSize) {
+					chunk.add(it.next());
+				}
+				count += chunk.size();
+				CompletableFuture<List<String>> rendering = CompletableFuture.supplyAsync(() -> renderChunk(chunk));
+				if(pending != null) {
+					write(writer, pending.join());
+				}
+				pending = rendering;
+			}
+			if(pending != null) {
+				write(writer, pending.join());
+			}
+
+			writer.write(getFooter());
+			logger.info("wrote " + count + " bugs to " + reportFile);
+			return true;
+		} catch (IOException e) {
+			logger.error(e.getMessage(), e);
+		}
+		return false;
+	}
+
+	/**
+	 * A report file is no issue tracker, so bugs are never known as exported.
+	 * @return null
+	 */
+	@Override
+	public URI isBugAlreadyExported() {
+		return null;
+	}
+
+	/**
+	 * Looks the source file up in the project of the bug if the report covers more than one project.
+	 */
+	@Override
+	protected File getSourceFile(BugInstance bug) {
+		if(bugProjects != null) {
+			return ProjectUtils.getSourceFile(bugProjects.get(bug), bug);
+		}
+		return super.getSourceFile(bug);
+	}
+
+	/**
+	 * Renders a chunk in parallel, the result has the order of the chunk.
+	 */
+	private List<String> renderChunk(List<BugInstance> chunk) {
+		return chunk.parallelStream().map(this::render).collect(Collectors.toList());
+	}
+
+	private static void write(Writer writer, List<String> entries) throws IOException {
+		for(String entry : entries) {
+			writer.write(entry);
+		}
+	}
+
+	private String getHeader() {
+		switch(format) {
+		case HTML: return "<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n<title>FindBugs report</title>\n</head>\n<body>\n";
+		case CSV: return "bug_id,rank,confidence,type,class,start_line,end_line,title,description\r\n";
+		default: return "";
+		}
+	}
+
+	private String getFooter() {
+		switch(format) {
+		case HTML: return "</body>\n</html>\n";
+		default: return "";
+		}
+	}
+
+	/**
+	 * Renders one bug in the format of the report.
+	 * @param bug
+	 * @return the entry including its line break(s)
+	 */
+	private String render(BugInstance bug) {
+		switch(format) {
+		case HTML:
+			return renderHtml(bug);
+		case CSV:
+			return csv(bug.getInstanceHash()) + "," + csv(BugRankCategory.getRank(bug.getBugRank()).toString()) + ","
+					+ csv(bug.getPriorityString()) + "," + csv(bug.getType()) + ","
+					+ csv(bug.getPrimarySourceLineAnnotation().getClassName()) + ","
+					+ bug.getPrimarySourceLineAnnotation().getStartLine() + "," + bug.getPrimarySourceLineAnnotation().getEndLine() + ","
+					+ csv(getBugTitle(bug)) + "," + csv(getBugDescription(bug)) + "\r\n";
+		case JSON_LINES:
+			Map<String, Object> entry = new LinkedHashMap<String, Object>();
+			entry.put("bugId", bug.getInstanceHash());
+			entry.put("rank", BugRankCategory.getRank(bug.getBugRank()).toString());
+			entry.put("confidence", bug.getPriorityString());
+			entry.put("type", bug.getType());
+			entry.put("className", bug.getPrimarySourceLineAnnotation().getClassName());
+			entry.put("startLine", bug.getPrimarySourceLineAnnotation().getStartLine());
+			entry.put("endLine", bug.getPrimarySourceLineAnnotation().getEndLine());
+			entry.put("title", getBugTitle(bug));
+			entry.put("description", getBugDescription(bug));
+			try {
+				return mapper.writeValueAsString(entry) + "\n";
+			} catch (JsonProcessingException e) {
+				logger.error(e.getMessage(), e);
+				return "";
+			}
+		default:
+			return getBugDescription(bug) + "\n\n---\n\n";
+		}
+	}
+
+	/**
+	 * Renders one bug as HTML section. The detail text of the bug pattern is HTML already and is written as it is,
+	 * all other values are escaped.
+	 */
+	private String renderHtml(BugInstance bug) {
+		StringBuilder html = new StringBuilder();
+		html.append("<section id=\"").append(bug.getInstanceHash()).append("\">\n");
+		html.append("<h2>").append(escapeHtml(getBugTitle(bug))).append("</h2>\n");
+		html.append("<div class=\"detail\">\n").append(bug.getBugPattern().getDetailText()).append("\n</div>\n");
+
+		html.append("<p>The problem occurs in <code>").append(escapeHtml(bug.getPrimarySourceLineAnnotation().getClassName()))
+				.append("</code> on line <strong>").append(bug.getPrimarySourceLineAnnotation().getStartLine()).append("</strong>");
+		if(bug.getPrimaryMethod() != null) {
+			html.append(" in method <code>").append(escapeHtml(bug.getPrimaryMethod().getMethodName())).append("</code>");
+		} else if(bug.getPrimaryField() != null) {
+			html.append(" in field <code>").append(escapeHtml(bug.getPrimaryField().getFieldName())).append("</code>");
+		} else if(bug.getPrimaryLocalVariableAnnotation() != null) {
+			html.append(" in local variable <code>").append(escapeHtml(bug.getPrimaryLocalVariableAnnotation().getName())).append("</code>");
+		}
+		html.append(":</p>\n");
+
+		int start = bug.getPrimarySourceLineAnnotation().getStartLine();
+		int end = bug.getPrimarySourceLineAnnotation().getEndLine();
+		String fragment = getSourceCodeFragment(getSourceFile(bug), start - 5, end + 5);
+		if(fragment != null) {
+			html.append("<pre><code>").append(escapeHtml(fragment)).append("</code></pre>\n");
+		}
+
+		html.append("<p>We have <strong>").append(escapeHtml(bug.getPriorityString())).append("</strong> confidence for this <strong>")
+				.append(BugRankCategory.getRank(bug.getBugRank())).append("</strong> bug! (FindBugs Bug-ID: ")
+				.append(bug.getInstanceHash()).append(")</p>\n");
+		html.append("</section>\n");
+		return html.toString();
+	}
+
+	private static String csv(String value) {
+		if(value == null) {
+			return "";
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	private static String escapeHtml(String value) {
+		if(value == null) {
+			return "";
+		}
+		return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+}
@@ -3,8 +3,14 @@ package de.kmindi.fbissueexport;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
 import org.apache.http.ParseException;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.log4j.Logger;
@@ -19,58 +25,65 @@ import edu.umd.cs.findbugs.BugInstance;
  * @author Kai Mindermann
  *
  */
-public class GitHubExporter extends PlatformExporter implements IPlatformExporter {
+public class GitHubExporter extends PlatformExporter implements IPlatformExporter, IIssueStateProvider {
 
 	private static Logger logger = Logger.getLogger(GitHubExporter.class);
 	
 	protected GitHubExporter(String ownerName, String repositoryName,
 			BugInstance bugInstance, IProject project) {
-		
-		// TODO check if issue tracker is available for this project
-		// TODO check if this repo is a fork and if a fork if issue tracker is available on orignal project
-		// if no issue tracker is available show warning to user
-		
 		super(ownerName, repositoryName, bugInstance, project);
+		this.apiBaseUrl = "https://api.github.com/";
+	}
+	
+	/**
+	 * Gets the API URL which just needs "OWNER/REPOSITORY" to be appended.
+	 * @return
+	 */
+	protected String getApiRepoUrl() {
+		return apiBaseUrl + "repos/";
 	}
 	
 	public boolean exportBug() {
-		final String apiRepoUrl = "https://api.github.com/repos/";
-		String issueRepo = ownerName + "/" + repositoryName;
-
 		try {
-			ResponseWithEntity response = httpGetRequest(apiRepoUrl + issueRepo);
-			if(response == null) {
-				logger.warn("no response");
-				return false;
-			}
-
 			// for GitHub
 			// check per API if the project is a fork 
 			// via https://api.github.com/repos/<OWNER>/<REPOSITORY> 
-			// check for parent and if parent exists for full_name
-			logger.debug("checking if this repo (" + issueRepo + ") is a fork?");
-			ObjectMapper mapper = new ObjectMapper();
-			Map<String, Object> repoData = mapper.readValue(response.getEntity(), Map.class);
-			Object parentData = repoData.get("parent");
+			String issueRepo = resolveIssueRepository(getApiRepoUrl());
+			if(issueRepo == null) {
+				journal(ExportEvent.Type.FAILED, null, "issue repository not resolved");
+				return false;
+			}
+			journal(ExportEvent.Type.RESOLVED, null, issueRepo);
 
-			if(parentData != null) {
-				Map<String,String> parentD = (Map<String, String>) parentData;
-				issueRepo = parentD.get("full_name");
-				logger.debug("is forked from: " + issueRepo);
+			// if the bug was already reported show the existing issue
+			URI existingIssue = isBugAlreadyExported();
+			if(existingIssue != null) {
+				logger.info("bug " + bugInstance.getInstanceHash() + " was already exported to " + existingIssue);
+				exportedIssue = existingIssue;
+				journal(ExportEvent.Type.DUPLICATE, existingIssue, null);
+				openIssuePage(existingIssue);
+				return true;
 			}
 
-			// TODO use isBugAlreadyReported to check if the bug was already reported
+			// the issue can only be created through the form, without it the export stays unfinished
+			if(!showIssuePages) {
+				return true;
+			}
 
 			// if the bug is not filed yet create a new issue
 			// https://github.com/<OWNER>/<REPOSITORY>/issues/new?title=<TITLE>&body=<DESCRIPTION>
+			String description = getBugDescription();
+			journal(ExportEvent.Type.RENDERED, null, description.length() + " characters");
 			URIBuilder uriBuilder = new URIBuilder("https://github.com/" + issueRepo + "/issues/new");
 			uriBuilder.addParameter("title", getBugTitle());
-			uriBuilder.addParameter("body", getBugDescription());
-			openWebPage(uriBuilder.build());
+			uriBuilder.addParameter("body", description);
+			openIssuePage(uriBuilder.build());
+			journal(ExportEvent.Type.SUBMITTED, null, "new issue form");
 			return true;
 
 		} catch (ParseException | IOException | URISyntaxException e) {
 			logger.error(e.getMessage(), e);
+			journal(ExportEvent.Type.FAILED, null, e.getMessage());
 		};
 
 		return false;
@@ -78,38 +91,253 @@ public class GitHubExporter extends PlatformExporter implements IPlatformExporte
 	
 	/**
 	 * Check all issues of the project if a given bug was already exported/reported.
-	 * @todo not implemented yet
-	 * @todo cache result and used cache version to check for further queries
+	 * 
+	 * Searches the issue list for the Bug-ID (bug.getInstanceHash()), the pages are fetched concurrently.
+	 * With a session all Bug-IDs found are kept in its index, further checks only ask for issues updated since the last one.
 	 * @see https://api.github.com/repos/<OWNER>/<REPOSITORY>/issues
-	 * @param bug
-	 * @return Boolean if the bug has been reported before
+	 * @return null if not exported an URI to the bug-report otherwise.
 	 */
 	public URI isBugAlreadyExported() {
-		// search issue list for Bug-ID (bug.getInstanceHash()) and don't create a new rather redirect to the existing issue
-		// https://api.github.com/repos/<OWNER>/<REPOSITORY>/issues
-
-		// loop through paginated response until we find a bug with our ID or reach the end
-		// care about paginated answers using https://developer.github.com/guides/traversing-with-pagination/ to navigate 
-		// always use the provided link header
-		// link header uses "<" and ">" to enclose the url
-		// but it gets parsed as name (starting with "<") and value (ending with ">")
-
-		/*Header[] headers = response.getResponse().getAllHeaders();
-		List<Header> headerList = Arrays.asList(headers);
-		for(Header header : headerList) {
-			//logger.info("header: " + header.getName());
-			if(header.getName().equals("Link")) {
-				logger.debug("found Link Header: " + header.getValue());
-				for(HeaderElement e : header.getElements()) {
-					logger.debug("element-name: "+ e.getName() + " value: " + e.getValue() + " parameters:" + e.getParameterCount());
-					for(NameValuePair nvp:e.getParameters()) {
-						logger.debug(nvp.getName()+"="+nvp.getValue());
+		String issueRepo = getIssueRepository();
+		if(issueRepo == null) {
+			return null;
+		}
+		final String bugId = bugInstance.getInstanceHash();
+		if(session == null) {
+			final URI[] existingIssue = new URI[1];
+			scanIssues(issueRepo, null, new IIssueVisitor() {
+				@Override
+				public boolean visitIssue(String issueBugId, URI issueURI, String updatedAt) {
+					if(bugId.equals(issueBugId)) {
+						existingIssue[0] = issueURI;
+						return false;
 					}
+					return true;
 				}
+			});
+			return existingIssue[0];
+		}
+		
+		synchronized (session) {
+			URI existingIssue = session.getExportedIssue(bugId);
+			if(existingIssue != null) {
+				return existingIssue;
 			}
-		}*/
-
+			// (incrementally) index all exported bugs of the repository
+			final String[] indexedSince = new String[] { session.getExportedBugsIndexedSince() };
+			boolean complete = scanIssues(issueRepo, indexedSince[0], new IIssueVisitor() {
+				@Override
+				public boolean visitIssue(String issueBugId, URI issueURI, String updatedAt) {
+					if(issueBugId != null) {
+						session.putExportedIssue(issueBugId, issueURI);
+					}
+					if(updatedAt != null && (indexedSince[0] == null || updatedAt.compareTo(indexedSince[0]) > 0)) {
+						indexedSince[0] = updatedAt;
+					}
+					return true;
+				}
+			});
+			if(complete && indexedSince[0] != null) {
+				session.setExportedBugsIndexedSince(indexedSince[0]);
+			}
+			return session.getExportedIssue(bugId);
+		}
+	}
+	
+	/**
+	 * Visitor for the issues found by scanIssues.
+	 */
+	private interface IIssueVisitor {
+		/**
+		 * @param bugId the Bug-ID found in the issue or null
+		 * @param issueURI the URI of the issue
+		 * @param updatedAt the ISO 8601 timestamp of the last update
+		 * @return true to continue, false to stop the scan
+		 */
+		boolean visitIssue(String bugId, URI issueURI, String updatedAt);
+	}
+	
+	/**
+	 * Scans all issues (and not pull requests) of a repository.
+	 * @param issueRepo "OWNER/REPOSITORY"
+	 * @param since ISO 8601 timestamp to only scan issues updated since, null to scan all
+	 * @param visitor
+	 * @return true if all issues were scanned
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean scanIssues(final String issueRepo, String since, final IIssueVisitor visitor) {
+		final ObjectMapper mapper = new ObjectMapper();
+		final boolean[] complete = new boolean[] { true };
+		try {
+			URIBuilder uriBuilder = new URIBuilder(getApiRepoUrl() + issueRepo + "/issues");
+			uriBuilder.addParameter("state", "all");
+			if(since != null) {
+				uriBuilder.addParameter("since", since);
+			}
+			boolean fetched = new PaginatedFetcher(8).fetch(uriBuilder.build().toString(), Collections.<String, String>emptyMap(), new IPageConsumer() {
+				@Override
+				public boolean consumePage(int page, ResponseWithEntity response) {
+					if(response.getResponse().getStatusLine().getStatusCode() != HttpStatus.SC_OK || response.getEntity() == null) {
+						logger.warn("could not scan issues of " + issueRepo + ": " + response.getResponse().getStatusLine());
+						complete[0] = false;
+						return false;
+					}
+					try {
+						List<Map<String, Object>> issues = mapper.readValue(response.getEntity(), List.class);
+						for(Map<String, Object> issue : issues) {
+							if(issue.containsKey("pull_request")) {
+								continue;
+							}
+							if(!visitor.visitIssue(getBugId((String) issue.get("body")), new URI((String) issue.get("html_url")), (String) issue.get("updated_at"))) {
+								complete[0] = false;
+								return false;
+							}
+						}
+						return true;
+					} catch (IOException | URISyntaxException e) {
+						logger.error(e.getMessage(), e);
+						complete[0] = false;
+						return false;
+					}
+				}
+			});
+			return fetched && complete[0];
+		} catch (URISyntaxException e) {
+			logger.error(e.getMessage(), e);
+		}
+		return false;
+	}
+	
+	/**
+	 * Links to lines of the pushed commit, e.g. https://github.com/OWNER/REPOSITORY/blob/SHA/PATH#L10-L20
+	 */
+	@Override
+	protected String getPermalink(String commit, String path, int start, int end) {
+		return "https://github.com/" + ownerName + "/" + repositoryName + "/blob/" + commit + "/" + path
+				+ "#L" + start + (end > start ? "-L" + end : "");
+	}
+	
+	@Override
+	public RepositoryProbe probeRepository(RemoteRepository remote, int timeoutMillis) {
+		return probeRepository(remote, getApiRepoUrl(), timeoutMillis);
+	}
+	
+	@Override
+	public String refreshIssueRepository() {
+		try {
+			return resolveIssueRepository(getApiRepoUrl(), false);
+		} catch (IOException e) {
+			logger.error(e.getMessage(), e);
+		}
 		return null;
 	}
+	
+	@Override
+	public String getIssueRepository() {
+		try {
+			return resolveIssueRepository(getApiRepoUrl());
+		} catch (IOException e) {
+			logger.error(e.getMessage(), e);
+		}
+		return null;
+	}
+	
+	/**
+	 * Fetches all issues that changed since the cursor (including closed ones) and picks those carrying a Bug-ID.
+	 * The first page is requested conditionally with the stored ETag, so an unchanged tracker costs a single 304 response.
+	 * @see https://developer.github.com/v3/issues/#list-issues-for-a-repository
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<IssueState> fetchIssueStates(IssueSyncCursor cursor) {
+		String issueRepo = getIssueRepository();
+		if(issueRepo == null) {
+			return null;
+		}
+		final List<IssueState> states = new ArrayList<IssueState>();
+		final IssueSyncCursor syncCursor = cursor;
+		final ObjectMapper mapper = new ObjectMapper();
+		final boolean[] failed = new boolean[1];
+		try {
+			URIBuilder uriBuilder = new URIBuilder(getApiRepoUrl() + issueRepo + "/issues");
+			uriBuilder.addParameter("state", "all");
+			uriBuilder.addParameter("sort", "updated");
+			uriBuilder.addParameter("direction", "asc");
+			if(cursor.getSince() != null) {
+				uriBuilder.addParameter("since", cursor.getSince());
+			}
+			final String listedRepo = issueRepo;
+			Map<String, String> headers = new HashMap<String, String>();
+			if(cursor.getEtag() != null) {
+				headers.put("If-None-Match", cursor.getEtag());
+			}
+			
+			boolean fetched = new PaginatedFetcher(8).fetch(uriBuilder.build().toString(), headers, new IPageConsumer() {
+				@Override
+				public boolean consumePage(int page, ResponseWithEntity response) {
+					int status = response.getResponse().getStatusLine().getStatusCode();
+					if(status == HttpStatus.SC_NOT_MODIFIED) {
+						if(logger.isDebugEnabled()) {
+							logger.debug("issues of " + listedRepo + " not modified since last synchronisation");
+						}
+						return false;
+					} else if(status != HttpStatus.SC_OK) {
+						logger.warn("could not fetch issues of " + listedRepo + ": " + response.getResponse().getStatusLine());
+						failed[0] = true;
+						return false;
+					}
+					if(page == 1) {
+						Header etag = response.getResponse().getFirstHeader("ETag");
+						syncCursor.setEtag(etag != null ? etag.getValue() : null);
+					}
+					try {
+						List<Map<String, Object>> issues = mapper.readValue(response.getEntity(), List.class);
+						for(Map<String, Object> issue : issues) {
+							syncCursor.advanceSince((String) issue.get("updated_at"));
+							String bugId = getBugId((String) issue.get("body"));
+							// pull requests are listed as issues as well
+							if(bugId == null || issue.containsKey("pull_request")) {
+								continue;
+							}
+							String state = (String) issue.get("state");
+							boolean closed = "closed".equals(state) || hasLabel(issue, "wontfix") || hasLabel(issue, "invalid");
+							states.add(new IssueState(bugId, new URI((String) issue.get("html_url")), state, closed));
+						}
+						return true;
+					} catch (IOException | URISyntaxException e) {
+						logger.error(e.getMessage(), e);
+						failed[0] = true;
+						return false;
+					}
+				}
+			});
+			if(!fetched || failed[0]) {
+				return null;
+			}
+		} catch (URISyntaxException e) {
+			logger.error(e.getMessage(), e);
+			return null;
+		}
+		return states;
+	}
+	
+	/**
+	 * Checks if an issue of the GitHub API has a label.
+	 * @param issue
+	 * @param label
+	 * @return true if the label is set
+	 */
+	@SuppressWarnings("unchecked")
+	private static boolean hasLabel(Map<String, Object> issue, String label) {
+		Object labels = issue.get("labels");
+		if(labels instanceof List) {
+			for(Map<String, Object> l : (List<Map<String, Object>>) labels) {
+				if(label.equalsIgnoreCase((String) l.get("name"))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
 
 }
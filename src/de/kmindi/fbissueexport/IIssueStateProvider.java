@@ -0,0 +1,24 @@
+package de.kmindi.fbissueexport;
+
+import java.util.List;
+
+/**
+ * Interface for PlatformExporters which can read back the state of exported issues.
+ * @author Kai Mindermann
+ *
+ */
+public interface IIssueStateProvider {
+	/**
+	 * Gets the repository the issues are reported to (the parent if the repository is a fork).
+	 * @return "OWNER/REPOSITORY" or null if it could not be determined
+	 */
+	abstract public String getIssueRepository();
+	
+	/**
+	 * Fetches the states of all issues carrying a FindBugs Bug-ID which changed after the cursor position.
+	 * Follows the pagination of the platform and moves the cursor forward.
+	 * @param cursor position of the last synchronisation, gets updated
+	 * @return the changed issue states, an empty list if nothing changed, null if the request failed
+	 */
+	abstract public List<IssueState> fetchIssueStates(IssueSyncCursor cursor);
+}
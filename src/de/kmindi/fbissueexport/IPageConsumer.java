@@ -0,0 +1,16 @@
+package de.kmindi.fbissueexport;
+
+/**
+ * Interface for consumers of the pages fetched by a PaginatedFetcher.
+ * @author Kai Mindermann
+ *
+ */
+public interface IPageConsumer {
+	/**
+	 * Consumes a page. Pages are passed one after another, but in the order they arrive, not in page order.
+	 * @param page the number of the page, starting with 1
+	 * @param response the response of the page
+	 * @return true to continue, false if no further pages are needed
+	 */
+	abstract public boolean consumePage(int page, ResponseWithEntity response);
+}
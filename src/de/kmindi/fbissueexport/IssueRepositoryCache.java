@@ -0,0 +1,84 @@
+package de.kmindi.fbissueexport;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.osgi.service.prefs.BackingStoreException;
+
+/**
+ * Cache for the issue repository of a repository (the parent if the repository is a fork).
+ * 
+ * The entries are persisted in the workspace preferences, so the fork lookup does not have to be repeated on every export.
+ * Outside of a running platform (e.g. in the load test) the cache is only kept in memory.
+ * 
+ * @author Kai Mindermann
+ */
+public class IssueRepositoryCache {
+	
+	private static Logger logger = Logger.getLogger(IssueRepositoryCache.class);
+	private static final String preferencePrefix = "issueRepository.";
+	private static Map<String, String> cache = new ConcurrentHashMap<String, String>();
+	private static volatile boolean loaded = false;
+	
+	/**
+	 * Gets the cached issue repository.
+	 * @param repositoryUrl the API URL of the repository
+	 * @return null if not cached, "OWNER/REPOSITORY" of the issue repository otherwise
+	 */
+	public static String get(String repositoryUrl) {
+		load();
+		return cache.get(repositoryUrl);
+	}
+	
+	/**
+	 * Caches and persists the issue repository.
+	 * @param repositoryUrl the API URL of the repository
+	 * @param issueRepo "OWNER/REPOSITORY" of the issue repository
+	 */
+	public static void put(String repositoryUrl, String issueRepo) {
+		load();
+		if(issueRepo.equals(cache.put(repositoryUrl, issueRepo)) || !Platform.isRunning()) {
+			return;
+		}
+		IEclipsePreferences preferences = InstanceScope.INSTANCE.getNode("de.kmindi.fbissueexport");
+		preferences.put(preferencePrefix + repositoryUrl, issueRepo);
+		try {
+			preferences.flush();
+		} catch (BackingStoreException e) {
+			logger.error(e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Loads the persisted entries, does nothing if they are loaded already.
+	 */
+	public static void load() {
+		if(loaded) {
+			return;
+		}
+		synchronized (IssueRepositoryCache.class) {
+			if(loaded) {
+				return;
+			}
+			if(!Platform.isRunning()) {
+				loaded = true;
+				return;
+			}
+			IEclipsePreferences preferences = InstanceScope.INSTANCE.getNode("de.kmindi.fbissueexport");
+			try {
+				for(String key : preferences.keys()) {
+					if(key.startsWith(preferencePrefix)) {
+						cache.put(key.substring(preferencePrefix.length()), preferences.get(key, null));
+					}
+				}
+			} catch (BackingStoreException e) {
+				logger.error(e.getMessage(), e);
+			}
+			loaded = true;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package de.kmindi.fbissueexport;
+
+import java.net.URI;
+
+/**
+ * Class for the state of an exported issue on a platform.
+ * 
+ * @author Kai Mindermann
+ */
+public class IssueState {
+	private String bugId;
+	private URI issueURI;
+	private String state;
+	private boolean closed;
+	
+	/**
+	 * Constructor.
+	 * @param bugId the FindBugs Bug-ID found in the issue
+	 * @param issueURI the URI of the issue
+	 * @param state the state as named by the platform
+	 * @param closed true if the issue was closed (or marked as invalid, wontfix, ...)
+	 */
+	public IssueState(String bugId, URI issueURI, String state, boolean closed) {
+		this.bugId = bugId;
+		this.issueURI = issueURI;
+		this.state = state;
+		this.closed = closed;
+	}
+
+	/**
+	 * Getter for the Bug-ID
+	 * @return the FindBugs Bug-ID (BugInstance.getInstanceHash())
+	 */
+	public String getBugId() {
+		return bugId;
+	}
+
+	/**
+	 * Getter for the issue URI
+	 * @return the URI of the issue
+	 */
+	public URI getIssueURI() {
+		return issueURI;
+	}
+
+	/**
+	 * Getter for the state
+	 * @return the state as named by the platform
+	 */
+	public String getState() {
+		return state;
+	}
+
+	/**
+	 * Checks if the issue was closed
+	 * @return true if the issue was closed (or marked as invalid, wontfix, ...)
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+}
@@ -0,0 +1,138 @@
+package de.kmindi.fbissueexport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.osgi.service.prefs.BackingStoreException;
+
+import edu.umd.cs.findbugs.BugInstance;
+
+/**
+ * Job which pulls the state of exported issues back from the platform and removes the FindBugs markers
+ * of bugs whose issue was closed (e.g. as false positive or wontfix).
+ *
+ * The synchronisation is incremental: only issues changed since the last run are transferred (see IssueSyncCursor).
+ * The Bug-IDs of closed issues are remembered per issue repository in the workspace preferences, so markers recreated by a new
+ * FindBugs run get removed again. The network requests run without a scheduling rule; only the marker changes of one run
+ * are done in a single workspace operation on the project.
+ *
+ * @author Kai Mindermann
+ *
+ */
+public class IssueStateSyncJob extends Job {
+
+	private static Logger logger = Logger.getLogger(IssueStateSyncJob.class);
+	private IProject project;
+
+	/**
+	 * Constructor.
+	 * @param project the project whose markers should be synchronised
+	 */
+	public IssueStateSyncJob(IProject project) {
+		super("Synchronising exported FindBugs issues of " + project.getName());
+		this.project = project;
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		monitor.beginTask(getName(), 3);
+		try {
+			ExporterSession session = ExporterSessionRegistry.getSession(project);
+			if(session == null) {
+				logger.info("no supported platform found for project " + project.getName());
+				return Status.OK_STATUS;
+			}
+			RemoteRepository remote = session.getRemote();
+			IPlatformExporter exporter = PlatformExporterFactory.createExporter(session, null, project);
+			if(!(exporter instanceof IIssueStateProvider)) {
+				logger.info("platform " + remote.getPlatform() + " does not support reading issue states");
+				return Status.OK_STATUS;
+			}
+			IIssueStateProvider provider = (IIssueStateProvider) exporter;
+			String issueRepo = provider.getIssueRepository();
+			if(issueRepo == null) {
+				return new Status(IStatus.WARNING, Activator.PLUGIN_ID, "could not resolve issue repository of " + remote);
+			}
+
+			// fetch changed issues
+			// machine-local state, kept out of the (usually versioned) project settings
+			IEclipsePreferences preferences = InstanceScope.INSTANCE.getNode("de.kmindi.fbissueexport");
+			IssueSyncCursor cursor = IssueSyncCursor.load(preferences, issueRepo);
+			List<IssueState> states = provider.fetchIssueStates(cursor);
+			if(states == null) {
+				return new Status(IStatus.WARNING, Activator.PLUGIN_ID, "could not fetch issue states of " + issueRepo);
+			}
+			monitor.worked(1);
+			if(monitor.isCanceled()) {
+				return Status.CANCEL_STATUS;
+			}
+
+			// update the closed Bug-IDs, reopened issues bring their markers back with the next FindBugs run
+			Set<String> closedBugIds = new LinkedHashSet<String>(Arrays.asList(preferences.get("sync." + issueRepo + ".closed", "").split(" ")));
+			closedBugIds.remove("");
+			for(IssueState state : states) {
+				if(state.isClosed()) {
+					closedBugIds.add(state.getBugId());
+				} else {
+					closedBugIds.remove(state.getBugId());
+				}
+			}
+			if(logger.isDebugEnabled()) {
+				logger.debug(states.size() + " changed issues, " + closedBugIds.size() + " closed issues in " + issueRepo);
+			}
+
+			// map the closed issues to markers and remove them at once
+			final List<IMarker> suppressedMarkers = new ArrayList<IMarker>();
+			if(!closedBugIds.isEmpty()) {
+				for(Map.Entry<IMarker, BugInstance> entry : MarkerHarvester.harvest(project, monitor).entrySet()) {
+					if(closedBugIds.contains(entry.getValue().getInstanceHash())) {
+						suppressedMarkers.add(entry.getKey());
+					}
+				}
+			}
+			monitor.worked(1);
+			if(!suppressedMarkers.isEmpty()) {
+				ResourcesPlugin.getWorkspace().run(new IWorkspaceRunnable() {
+					@Override
+					public void run(IProgressMonitor monitor) throws CoreException {
+						for(IMarker marker : suppressedMarkers) {
+							marker.delete();
+						}
+					}
+				}, project, IWorkspace.AVOID_UPDATE, monitor);
+				logger.info("removed " + suppressedMarkers.size() + " markers of closed issues in project " + project.getName());
+			}
+			monitor.worked(1);
+
+			cursor.store(preferences, issueRepo);
+			preferences.put("sync." + issueRepo + ".closed", String.join(" ", closedBugIds));
+			preferences.flush();
+			return Status.OK_STATUS;
+		} catch (OperationCanceledException e) {
+			return Status.CANCEL_STATUS;
+		} catch (CoreException | BackingStoreException e) {
+			logger.error(e.getMessage(), e);
+			return new Status(IStatus.ERROR, Activator.PLUGIN_ID, e.getMessage(), e);
+		} finally {
+			monitor.done();
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package de.kmindi.fbissueexport;
+
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+
+/**
+ * Position of an incremental issue state synchronisation.
+ * 
+ * Stores the timestamp of the last seen change and the ETag of the last response in the workspace preferences,
+ * so a further synchronisation only transfers issues that changed in between.
+ * 
+ * @author Kai Mindermann
+ */
+public class IssueSyncCursor {
+	private String since;
+	private String etag;
+	
+	/**
+	 * Constructor.
+	 * @param since ISO 8601 timestamp of the last seen change or null for a full synchronisation
+	 * @param etag ETag of the last response or null
+	 */
+	public IssueSyncCursor(String since, String etag) {
+		this.since = since;
+		this.etag = etag;
+	}
+	
+	/**
+	 * Loads the cursor for an issue repository from the preferences.
+	 * @param preferences
+	 * @param issueRepo "OWNER/REPOSITORY"
+	 * @return the stored cursor, an empty one if nothing was stored
+	 */
+	public static IssueSyncCursor load(IEclipsePreferences preferences, String issueRepo) {
+		return new IssueSyncCursor(
+				preferences.get("sync." + issueRepo + ".since", null),
+				preferences.get("sync." + issueRepo + ".etag", null));
+	}
+	
+	/**
+	 * Stores the cursor for an issue repository in the preferences.
+	 * @param preferences
+	 * @param issueRepo "OWNER/REPOSITORY"
+	 */
+	public void store(IEclipsePreferences preferences, String issueRepo) {
+		if(since != null) {
+			preferences.put("sync." + issueRepo + ".since", since);
+		}
+		if(etag != null) {
+			preferences.put("sync." + issueRepo + ".etag", etag);
+		}
+	}
+
+	/**
+	 * Getter for since
+	 * @return ISO 8601 timestamp of the last seen change or null
+	 */
+	public String getSince() {
+		return since;
+	}
+
+	/**
+	 * Setter for since, only moves the cursor forward
+	 * @param since ISO 8601 timestamp of a seen change
+	 */
+	public void advanceSince(String since) {
+		if(since != null && (this.since == null || since.compareTo(this.since) > 0)) {
+			this.since = since;
+		}
+	}
+
+	/**
+	 * Getter for etag
+	 * @return ETag of the last response or null
+	 */
+	public String getEtag() {
+		return etag;
+	}
+
+	/**
+	 * Setter for etag
+	 * @param etag
+	 */
+	public void setEtag(String etag) {
+		this.etag = etag;
+	}
+}
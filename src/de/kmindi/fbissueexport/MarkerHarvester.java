@@ -0,0 +1,157 @@
+package de.kmindi.fbissueexport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.apache.log4j.Logger;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+import de.tobject.findbugs.reporter.MarkerUtil;
+import edu.umd.cs.findbugs.BugInstance;
+
+/**
+ * Collects the FindBugs markers of projects and resolves them to their BugInstances for bulk operations.
+ *
+ * Resolving a marker (MarkerUtil.findBugInstanceForMarker) is expensive, so the markers are resolved in parallel and
+ * the results are cached by marker id and modification stamp of the marked resource. Repeated harvests of
+ * unchanged projects only resolve new markers. The cache of a project only keeps the markers seen in its last harvest.
+ *
+ * @author Kai Mindermann
+ */
+public class MarkerHarvester {
+
+	private static Logger logger = Logger.getLogger(MarkerHarvester.class);
+	private static Map<String, Map<Long, ResolvedMarker>> cache = new ConcurrentHashMap<String, Map<Long, ResolvedMarker>>();
+
+	/**
+	 * Cache entry, only valid as long as the marked resource has the same modification stamp.
+	 */
+	private static class ResolvedMarker {
+		private final IMarker marker;
+		private final long modificationStamp;
+		private final BugInstance bug;
+
+		private ResolvedMarker(IMarker marker, long modificationStamp, BugInstance bug) {
+			this.marker = marker;
+			this.modificationStamp = modificationStamp;
+			this.bug = bug;
+		}
+	}
+
+	/**
+	 * Harvests the bugs of all open projects of the workspace.
+	 * @param monitor
+	 * @return the bugs with the project they were found in, each bug only once
+	 */
+	public static Map<BugInstance, IProject> harvestWorkspace(IProgressMonitor monitor) {
+		List<IProject> projects = new ArrayList<IProject>();
+		for(IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+			if(project.isOpen()) {
+				projects.add(project);
+			}
+		}
+		return harvestBugs(projects, monitor);
+	}
+
+	/**
+	 * Harvests the bugs of projects.
+	 * @param projects
+	 * @param monitor
+	 * @return the bugs with the project they were found in, in the order of the projects and markers,
+	 * each bug only once (e.g. if marked in different views)
+	 */
+	public static Map<BugInstance, IProject> harvestBugs(Collection<IProject> projects, IProgressMonitor monitor) {
+		Set<String> bugIds = new HashSet<String>();
+		Map<BugInstance, IProject> bugs = new LinkedHashMap<BugInstance, IProject>();
+		for(IProject project : projects) {
+			for(BugInstance bug : harvest(project, monitor).values()) {
+				if(bugIds.add(bug.getInstanceHash())) {
+					bugs.put(bug, project);
+				}
+			}
+		}
+		return bugs;
+	}
+
+	/**
+	 * Harvests the FindBugs markers of a project and their bugs.
+	 * @param project
+	 * @param monitor
+	 * @return the markers with their bug in the order of MarkerUtil.getAllMarkers, markers without a bug are left out
+	 * @throws OperationCanceledException if the monitor was canceled
+	 */
+	public static Map<IMarker, BugInstance> harvest(IProject project, IProgressMonitor monitor) {
+		if(monitor.isCanceled()) {
+			throw new OperationCanceledException();
+		}
+		List<IMarker> markers = Arrays.asList(MarkerUtil.getAllMarkers(project));
+		Map<Long, ResolvedMarker> cached = cache.getOrDefault(project.getName(), new ConcurrentHashMap<Long, ResolvedMarker>());
+
+		List<IMarker> unresolved = markers.stream().filter(marker -> getCached(cached, marker) == null).collect(Collectors.toList());
+		if(!unresolved.isEmpty()) {
+			// the first marker loads the bug collection of the project, the others can share it
+			resolve(cached, unresolved.get(0));
+			unresolved.subList(1, unresolved.size()).parallelStream().forEach(marker -> {
+				if(!monitor.isCanceled()) {
+					resolve(cached, marker);
+				}
+			});
+			if(monitor.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+		}
+
+		Map<IMarker, BugInstance> bugs = new LinkedHashMap<IMarker, BugInstance>();
+		Map<Long, ResolvedMarker> seen = new ConcurrentHashMap<Long, ResolvedMarker>();
+		for(IMarker marker : markers) {
+			ResolvedMarker resolved = getCached(cached, marker);
+			if(resolved != null) {
+				seen.put(marker.getId(), resolved);
+				bugs.put(marker, resolved.bug);
+			}
+		}
+		cache.put(project.getName(), seen);
+		if(logger.isDebugEnabled()) {
+			logger.debug("harvested " + bugs.size() + " bugs of project " + project.getName() + ", resolved " + unresolved.size() + " of " + markers.size() + " markers");
+		}
+		return bugs;
+	}
+
+	/**
+	 * Removes all cached bugs, e.g. if the plugin is stopped.
+	 */
+	public static void clear() {
+		cache.clear();
+	}
+
+	private static ResolvedMarker getCached(Map<Long, ResolvedMarker> cached, IMarker marker) {
+		ResolvedMarker resolved = cached.get(marker.getId());
+		if(resolved == null || !resolved.marker.equals(marker) || resolved.modificationStamp != marker.getResource().getModificationStamp()) {
+			return null;
+		}
+		return resolved;
+	}
+
+	/**
+	 * Resolves a marker and caches its bug, markers without bug are not cached and tried again next time.
+	 */
+	private static void resolve(Map<Long, ResolvedMarker> cached, IMarker marker) {
+		long modificationStamp = marker.getResource().getModificationStamp();
+		BugInstance bug = MarkerUtil.findBugInstanceForMarker(marker);
+		if(bug != null) {
+			cached.put(marker.getId(), new ResolvedMarker(marker, modificationStamp, bug));
+		}
+	}
+}
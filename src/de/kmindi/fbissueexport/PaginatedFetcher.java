@@ -0,0 +1,215 @@
+package de.kmindi.fbissueexport;
+
+import java.net.URISyntaxException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.log4j.Logger;
+
+/**
+ * Fetches all pages of a paginated list which uses the link header (like the GitHub API).
+ * 
+ * Requests the maximum page size and gzip compressed responses. The first response tells the last page
+ * (rel="last"), so the remaining pages are fetched concurrently with a bounded number of requests in flight,
+ * using a thread pool shared by all fetches.
+ * Without a rel="last" the rel="next" links are followed one after another.
+ * 
+ * @see https://developer.github.com/guides/traversing-with-pagination/
+ * @author Kai Mindermann
+ */
+public class PaginatedFetcher {
+	
+	private static Logger logger = Logger.getLogger(PaginatedFetcher.class);
+	private static final AtomicInteger threadCount = new AtomicInteger();
+	
+	/**
+	 * Threads shared by all fetches, bounded like the connections per route of the SharedHttpClient.
+	 * Idle threads end after a while, so no thread is kept between exports.
+	 */
+	private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(8, 8, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "FindBugs issue export page fetcher " + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	
+	static {
+		executor.allowCoreThreadTimeOut(true);
+	}
+	private int maxConcurrentRequests;
+	private int pageSize;
+	
+	/**
+	 * Gets the threads shared by all fetches, e.g. to request the next page of a list which is followed by hand.
+	 * @return the bounded executor
+	 */
+	static ExecutorService getExecutor() {
+		return executor;
+	}
+	
+	/**
+	 * Constructor using the maximum page size of GitHub.
+	 * @param maxConcurrentRequests maximum number of pages requested at the same time
+	 */
+	public PaginatedFetcher(int maxConcurrentRequests) {
+		this(maxConcurrentRequests, 100);
+	}
+	
+	/**
+	 * Constructor.
+	 * @param maxConcurrentRequests maximum number of pages requested at the same time
+	 * @param pageSize value of the per_page parameter
+	 */
+	public PaginatedFetcher(int maxConcurrentRequests, int pageSize) {
+		this.maxConcurrentRequests = maxConcurrentRequests;
+		this.pageSize = pageSize;
+	}
+	
+	/**
+	 * Fetches all pages of a list and passes each one to the consumer as soon as it arrived.
+	 * 
+	 * Further pages are only fetched if the first one was answered with "200 OK", the consumer sees the first
+	 * response in any case (e.g. to handle "304 Not Modified").
+	 * @param url the URL of the list
+	 * @param firstPageHeaders additional headers for the first request, e.g. If-None-Match
+	 * @param consumer
+	 * @return true if all pages were fetched successfully or the consumer stopped, false if a request failed
+	 */
+	public boolean fetch(String url, Map<String, String> firstPageHeaders, final IPageConsumer consumer) {
+		String firstPageUrl;
+		try {
+			firstPageUrl = new URIBuilder(url).setParameter("per_page", String.valueOf(pageSize)).build().toString();
+		} catch (URISyntaxException e) {
+			logger.error(e.getMessage(), e);
+			return false;
+		}
+		
+		Map<String, String> headers = new HashMap<String, String>(firstPageHeaders);
+		headers.put("Accept-Encoding", "gzip");
+		ResponseWithEntity first = SharedHttpClient.executeGet(firstPageUrl, headers);
+		if(first == null) {
+			return false;
+		}
+		if(!consumer.consumePage(1, first) || first.getResponse().getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+			return first.getResponse().getStatusLine().getStatusCode() < 400;
+		}
+		
+		String lastPageUrl = PlatformExporter.getLinkRelation(first.getResponse(), "last");
+		int lastPage = getPageNumber(lastPageUrl);
+		if(lastPage > 1) {
+			return fetchConcurrently(lastPageUrl, lastPage, consumer);
+		}
+		
+		// no rel="last", follow rel="next"
+		String nextPageUrl = PlatformExporter.getLinkRelation(first.getResponse(), "next");
+		for(int page = 2; nextPageUrl != null; page++) {
+			ResponseWithEntity response = SharedHttpClient.executeGet(nextPageUrl, Collections.singletonMap("Accept-Encoding", "gzip"));
+			if(response == null || response.getResponse().getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+				return false;
+			}
+			if(!consumer.consumePage(page, response)) {
+				return true;
+			}
+			nextPageUrl = PlatformExporter.getLinkRelation(response.getResponse(), "next");
+		}
+		return true;
+	}
+	
+	/**
+	 * Fetches the pages 2 to lastPage concurrently, the consumer is called on the calling thread.
+	 * At most maxConcurrentRequests pages of this fetch are requested at the same time, the next page is submitted
+	 * whenever one arrived.
+	 */
+	private boolean fetchConcurrently(String lastPageUrl, int lastPage, IPageConsumer consumer) {
+		if(logger.isDebugEnabled()) {
+			logger.debug("fetching pages 2 to " + lastPage + " with " + maxConcurrentRequests + " concurrent requests");
+		}
+		CompletionService<Map.Entry<Integer, ResponseWithEntity>> completionService = new ExecutorCompletionService<Map.Entry<Integer, ResponseWithEntity>>(executor);
+		List<Future<Map.Entry<Integer, ResponseWithEntity>>> requests = new ArrayList<Future<Map.Entry<Integer, ResponseWithEntity>>>();
+		try {
+			int nextPage = 2;
+			for(; nextPage <= lastPage && nextPage - 2 < maxConcurrentRequests; nextPage++) {
+				requests.add(submitPage(completionService, lastPageUrl, nextPage));
+			}
+			for(int i = 2; i <= lastPage; i++) {
+				Map.Entry<Integer, ResponseWithEntity> page = completionService.take().get();
+				if(nextPage <= lastPage) {
+					requests.add(submitPage(completionService, lastPageUrl, nextPage++));
+				}
+				ResponseWithEntity response = page.getValue();
+				if(response == null || response.getResponse().getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+					logger.warn("could not fetch page " + page.getKey() + " of " + lastPageUrl);
+					return false;
+				}
+				if(!consumer.consumePage(page.getKey(), response)) {
+					return true;
+				}
+			}
+			return true;
+		} catch (URISyntaxException | ExecutionException e) {
+			logger.error(e.getMessage(), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			// stops requests not needed anymore if the consumer stopped early
+			for(Future<Map.Entry<Integer, ResponseWithEntity>> request : requests) {
+				request.cancel(true);
+			}
+		}
+		return false;
+	}
+	
+	private static Future<Map.Entry<Integer, ResponseWithEntity>> submitPage(CompletionService<Map.Entry<Integer, ResponseWithEntity>> completionService,
+			String lastPageUrl, final int pageNumber) throws URISyntaxException {
+		final String pageUrl = new URIBuilder(lastPageUrl).setParameter("page", String.valueOf(pageNumber)).build().toString();
+		return completionService.submit(new Callable<Map.Entry<Integer, ResponseWithEntity>>() {
+			@Override
+			public Map.Entry<Integer, ResponseWithEntity> call() {
+				ResponseWithEntity response = SharedHttpClient.executeGet(pageUrl, Collections.singletonMap("Accept-Encoding", "gzip"));
+				return new AbstractMap.SimpleImmutableEntry<Integer, ResponseWithEntity>(pageNumber, response);
+			}
+		});
+	}
+	
+	/**
+	 * Gets the value of the page parameter of a URL.
+	 * @param url
+	 * @return the page number or 0 if the URL is null or has no page parameter
+	 */
+	private static int getPageNumber(String url) {
+		if(url == null) {
+			return 0;
+		}
+		try {
+			List<NameValuePair> parameters = new URIBuilder(url).getQueryParams();
+			for(NameValuePair parameter : parameters) {
+				if(parameter.getName().equals("page")) {
+					return Integer.parseInt(parameter.getValue());
+				}
+			}
+		} catch (URISyntaxException | NumberFormatException e) {
+			logger.warn("could not read page number of " + url);
+		}
+		return 0;
+	}
+}
@@ -2,19 +2,25 @@ package de.kmindi.fbissueexport;
 
 import java.awt.Desktop;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.LineNumberReader;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import org.apache.http.Header;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.util.EntityUtils;
+import org.apache.http.HttpStatus;
 import org.apache.log4j.Logger;
 import org.eclipse.core.resources.IProject;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugRankCategory;
 
@@ -26,10 +32,37 @@ import edu.umd.cs.findbugs.BugRankCategory;
 public abstract class PlatformExporter implements IPlatformExporter{
 	
 	private static Logger logger = Logger.getLogger(PlatformExporter.class);
+	
+	/**
+	 * Regular Expression to find the FindBugs Bug-ID in an exported issue.
+	 * 
+	 * Groups:
+	 *  - Group 1: Bug-ID (BugInstance.getInstanceHash())
+	 */
+	protected static final Pattern bugIdPattern = Pattern.compile("FindBugs Bug-ID: ([0-9a-fA-F]+)");
+	
+	/**
+	 * Regular Expression to find an entry of a link header like &lt;URL&gt;; rel="REL".
+	 * 
+	 * Groups:
+	 *  - Group 1: URL
+	 *  - Group 2: relation
+	 */
+	private static final Pattern linkHeaderPattern = Pattern.compile("<([^>]+)>\\s*;\\s*rel=\"([^\"]+)\"");
+	
+	/**
+	 * Maximum number of lines of a commit-pinned excerpt, the link shows the rest.
+	 */
+	private static final int maxExcerptLines = 12;
+	
 	protected String ownerName = null;
 	protected String repositoryName = null;
 	protected BugInstance bugInstance = null;
 	protected IProject project = null;
+	protected String apiBaseUrl = null;
+	protected URI exportedIssue = null;
+	protected ExporterSession session = null;
+	protected boolean showIssuePages = true;
 	
 	/**
 	 * Constructor which can only be used by subclasses. 
@@ -47,31 +80,248 @@ public abstract class PlatformExporter implements IPlatformExporter{
 		this.project = project;
 	}
 	
+	/**
+	 * Gets the issue the bug was exported to by exportBug(), either the created or an already existing one.
+	 * @return null if not known (e.g. if only the form to create the issue was opened), the URI of the issue otherwise
+	 */
+	public URI getExportedIssue() {
+		return exportedIssue;
+	}
+	
+	/**
+	 * Sets the session shared with the other exporters for the same repository.
+	 * @param session
+	 */
+	public void setSession(ExporterSession session) {
+		this.session = session;
+	}
+	
+	/**
+	 * Sets if issues and forms to create them are shown to the user, disabled e.g. for bulk exports.
+	 * Without the form, platforms which can only create issues through it do not finish the export.
+	 * @param showIssuePages
+	 */
+	public void setShowIssuePages(boolean showIssuePages) {
+		this.showIssuePages = showIssuePages;
+	}
+	
+	/**
+	 * Sets the base URL of the platform API, e.g. to use a local test server.
+	 * @param apiBaseUrl URL ending with "/"
+	 */
+	public void setApiBaseUrl(String apiBaseUrl) {
+		this.apiBaseUrl = apiBaseUrl;
+	}
+	
 	/**
 	 * Performs a HTTP GET Request.
 	 * @param url
 	 * @return ResponseWithEntity(HTTPResponse, String entity)
 	 */
 	protected ResponseWithEntity httpGetRequest(String url) {
-		try (CloseableHttpClient httpClient = HttpClientBuilder.create().build()) {
-			HttpGet request = new HttpGet(url);
-			request.addHeader("content-type", "application/json");
-			logger.debug("request line:" + request.getRequestLine());
-			HttpResponse result = httpClient.execute(request);
-			logger.debug("request status: " + result.getStatusLine());
-			return new ResponseWithEntity(result,EntityUtils.toString(result.getEntity(), "UTF-8"));
-		} catch (IOException e) {
-			logger.error(e.getMessage(), e);
+		return httpGetRequest(url, Collections.<String, String>emptyMap());
+	}
+	
+	/**
+	 * Performs a HTTP GET Request with additional headers, e.g. If-None-Match for conditional requests.
+	 * @param url
+	 * @param headers additional request headers
+	 * @return ResponseWithEntity(HTTPResponse, String entity), the entity is null if the response has none (e.g. 304 Not Modified)
+	 */
+	protected ResponseWithEntity httpGetRequest(String url, Map<String, String> headers) {
+		// repeat requests of the session conditionally, unchanged responses are taken from its cache
+		ResponseWithEntity cached = null;
+		if(session != null && !headers.containsKey("If-None-Match")) {
+			cached = session.getCachedResponse(url);
+			if(cached != null) {
+				headers = new HashMap<String, String>(headers);
+				headers.put("If-None-Match", cached.getResponse().getFirstHeader("ETag").getValue());
+			}
+		}
+		ResponseWithEntity response = SharedHttpClient.executeGet(url, headers);
+		if(response == null || session == null) {
+			return response;
+		}
+		int status = response.getResponse().getStatusLine().getStatusCode();
+		if(status == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+			if(logger.isDebugEnabled()) {
+				logger.debug("not modified, using cached response of " + url);
+			}
+			return cached;
+		} else if(status == HttpStatus.SC_OK && response.getResponse().getFirstHeader("ETag") != null) {
+			session.putCachedResponse(url, response);
+		}
+		return response;
+	}
+	
+	/**
+	 * Gets the URL of a relation in the link header of a response.
+	 * @see https://developer.github.com/guides/traversing-with-pagination/
+	 * @param response
+	 * @param relation e.g. "next" or "last"
+	 * @return null if the relation is not part of the link header, the URL otherwise
+	 */
+	protected static String getLinkRelation(HttpResponse response, String relation) {
+		for(Header header : response.getHeaders("Link")) {
+			Matcher matcher = linkHeaderPattern.matcher(header.getValue());
+			while(matcher.find()) {
+				if(matcher.group(2).equals(relation)) {
+					return matcher.group(1);
+				}
+			}
 		}
 		return null;
 	}
 	
+	/**
+	 * Gets the FindBugs Bug-ID from the text of an exported issue.
+	 * @param text
+	 * @return null if the text does not contain a Bug-ID, the Bug-ID otherwise
+	 */
+	protected static String getBugId(String text) {
+		if(text == null) {
+			return null;
+		}
+		Matcher matcher = bugIdPattern.matcher(text);
+		return matcher.find() ? matcher.group(1) : null;
+	}
+	
+	/**
+	 * Gets the repository issues should be reported to.
+	 * 
+	 * Checks per API if the project is a fork and uses the full_name of the parent if it is.
+	 * The result is kept in the IssueRepositoryCache.
+	 * @param apiRepoUrl the API URL which just needs "OWNER/REPOSITORY" to be appended
+	 * @return "OWNER/REPOSITORY" of the issue repository or null if the API did not respond
+	 * @throws IOException if the response could not be parsed
+	 */
+	protected String resolveIssueRepository(String apiRepoUrl) throws IOException {
+		return resolveIssueRepository(apiRepoUrl, true);
+	}
+	
+	/**
+	 * Gets the repository issues should be reported to.
+	 * 
+	 * Checks per API if the project is a fork and uses the full_name of the parent if it is.
+	 * @param apiRepoUrl the API URL which just needs "OWNER/REPOSITORY" to be appended
+	 * @param useCache false to ask the API even if the result is cached already
+	 * @return "OWNER/REPOSITORY" of the issue repository or null if the API did not respond
+	 * @throws IOException if the response could not be parsed
+	 */
+	@SuppressWarnings("unchecked")
+	protected String resolveIssueRepository(String apiRepoUrl, boolean useCache) throws IOException {
+		String issueRepo = ownerName + "/" + repositoryName;
+		if(useCache && session != null && session.getIssueRepository() != null) {
+			return session.getIssueRepository();
+		}
+		if(useCache) {
+			String cachedIssueRepo = IssueRepositoryCache.get(apiRepoUrl + issueRepo);
+			if(cachedIssueRepo != null) {
+				if(session != null) {
+					session.setIssueRepository(cachedIssueRepo);
+				}
+				return cachedIssueRepo;
+			}
+		}
+		ResponseWithEntity response = httpGetRequest(apiRepoUrl + issueRepo);
+		if(response == null || response.getEntity() == null) {
+			logger.warn("no response");
+			return null;
+		}
+
+		// check for parent and if parent exists for full_name
+		if(logger.isDebugEnabled()) {
+			logger.debug("checking if this repo (" + issueRepo + ") is a fork?");
+		}
+		ObjectMapper mapper = new ObjectMapper();
+		Map<String, Object> repoData = mapper.readValue(response.getEntity(), Map.class);
+		Object parentData = repoData.get("parent");
+
+		if(parentData != null) {
+			Map<String,String> parentD = (Map<String, String>) parentData;
+			issueRepo = parentD.get("full_name");
+			if(logger.isDebugEnabled()) {
+				logger.debug("is forked from: " + issueRepo);
+			}
+		}
+		IssueRepositoryCache.put(apiRepoUrl + ownerName + "/" + repositoryName, issueRepo);
+		if(session != null) {
+			session.setIssueRepository(issueRepo);
+		}
+		return issueRepo;
+	}
+	
+	/**
+	 * Resolves the issue repository again, ignoring and updating the cached one.
+	 * Used by the WarmUpJob, which also leaves an open connection to the platform in the pool.
+	 * @return "OWNER/REPOSITORY" of the issue repository or null if the platform does not support it
+	 */
+	public String refreshIssueRepository() {
+		return null;
+	}
+	
+	/**
+	 * Asks the platform if bugs can be reported to the repository, used by the PlatformResolver to choose between remotes.
+	 * Platforms without such an API are assumed to be usable.
+	 * @param remote the remote this exporter was created for
+	 * @param timeoutMillis time after which the platform is treated as not answering
+	 * @return the probe, never null
+	 */
+	public RepositoryProbe probeRepository(RemoteRepository remote, int timeoutMillis) {
+		return new RepositoryProbe(remote, true, true, true, null);
+	}
+	
+	/**
+	 * Probes a repository with an API reporting "has_issues" and the "parent" of forks.
+	 * A found parent is put into the IssueRepositoryCache, so the export does not have to ask again.
+	 * @param remote the remote this exporter was created for
+	 * @param apiRepoUrl the API URL which just needs "OWNER/REPOSITORY" to be appended
+	 * @param timeoutMillis time after which the platform is treated as not answering
+	 * @return the probe, never null
+	 */
+	@SuppressWarnings("unchecked")
+	protected RepositoryProbe probeRepository(RemoteRepository remote, String apiRepoUrl, int timeoutMillis) {
+		String repo = ownerName + "/" + repositoryName;
+		ResponseWithEntity response = SharedHttpClient.executeGet(apiRepoUrl + repo, Collections.<String, String>emptyMap(), timeoutMillis);
+		if(response == null) {
+			return RepositoryProbe.unanswered(remote);
+		}
+		int status = response.getResponse().getStatusLine().getStatusCode();
+		if(status == HttpStatus.SC_NOT_FOUND || status == HttpStatus.SC_GONE) {
+			return new RepositoryProbe(remote, true, false, false, null);
+		}
+		if(status != HttpStatus.SC_OK || response.getEntity() == null) {
+			return RepositoryProbe.unanswered(remote);
+		}
+		try {
+			Map<String, Object> repoData = new ObjectMapper().readValue(response.getEntity(), Map.class);
+			String parent = null;
+			if(repoData.get("parent") instanceof Map) {
+				parent = (String) ((Map<String, Object>) repoData.get("parent")).get("full_name");
+			}
+			IssueRepositoryCache.put(apiRepoUrl + repo, parent != null ? parent : repo);
+			return new RepositoryProbe(remote, true, true, Boolean.TRUE.equals(repoData.get("has_issues")), parent);
+		} catch (IOException e) {
+			logger.warn("could not parse repository of " + remote + ": " + e.getMessage());
+			return RepositoryProbe.unanswered(remote);
+		}
+	}
+	
 	/**
 	 * Gets a title for the bug.
 	 * @return
 	 */
 	protected String getBugTitle() {
-		return bugInstance.getMessageWithoutPrefix();
+		return getBugTitle(bugInstance);
+	}
+	
+	/**
+	 * Gets a title for a bug.
+	 * @param bug
+	 * @return
+	 */
+	protected String getBugTitle(BugInstance bug) {
+		return bug.getMessageWithoutPrefix();
 	}
 
 	/**
@@ -79,65 +329,204 @@ public abstract class PlatformExporter implements IPlatformExporter{
 	 * @return
 	 */
 	protected String getBugDescription() {
+		return getBugDescription(bugInstance);
+	}
+	
+	/**
+	 * Gets a Markdown formatted description of a bug.
+	 * @param bug
+	 * @return
+	 */
+	protected String getBugDescription(BugInstance bug) {
 		String md = "";
-		md += "# " + bugInstance.getAbridgedMessage() + "\n";
+		md += "# " + bug.getAbridgedMessage() + "\n";
 		md += "\n\n"
-				+ bugInstance.getBugPattern().getDetailText() + "\n\n";
+				+ bug.getBugPattern().getDetailText() + "\n\n";
 
 		md += "The problem occurs in `"
-				+ bugInstance.getPrimarySourceLineAnnotation().getClassName()
-				+ "` on line **" + bugInstance.getPrimarySourceLineAnnotation().getStartLine() + "**";
-		if(bugInstance.getPrimaryMethod() != null) {
-			md += "in method `" + bugInstance.getPrimaryMethod().getMethodName() + "`";
-		} else if(bugInstance.getPrimaryField() != null) {
-			md += "in field `" + bugInstance.getPrimaryField().getFieldName() + "`";
-		} else if(bugInstance.getPrimaryLocalVariableAnnotation() != null) {
-			md += "in local variable `" + bugInstance.getPrimaryLocalVariableAnnotation().getName() + "`";
+				+ bug.getPrimarySourceLineAnnotation().getClassName()
+				+ "` on line **" + bug.getPrimarySourceLineAnnotation().getStartLine() + "**";
+		if(bug.getPrimaryMethod() != null) {
+			md += "in method `" + bug.getPrimaryMethod().getMethodName() + "`";
+		} else if(bug.getPrimaryField() != null) {
+			md += "in field `" + bug.getPrimaryField().getFieldName() + "`";
+		} else if(bug.getPrimaryLocalVariableAnnotation() != null) {
+			md += "in local variable `" + bug.getPrimaryLocalVariableAnnotation().getName() + "`";
 		}
 		md += ":\n\n";
 				
 
-		md += "```java\n";
-		md += getSourceCodeFragment(ProjectUtils.getSourceFile(project, bugInstance), bugInstance.getPrimarySourceLineAnnotation().getStartLine() - 5, bugInstance.getPrimarySourceLineAnnotation().getEndLine() + 5 );
-		md += "```\n\n";
+		md += getSourceCodeSnippet(bug);
 
-		md += "We have **" + bugInstance.getPriorityString() + "** confidence for this **" + BugRankCategory.getRank(bugInstance.getBugRank()) + "** bug!";
+		md += "We have **" + bug.getPriorityString() + "** confidence for this **" + BugRankCategory.getRank(bug.getBugRank()) + "** bug!";
 		md +="\n\nThis bug was found by FindBugs and exported using kmindi's [FBIssueExport](https://github.com/kmindi/FBIssueExport). \n"
-				+ "(FindBugs Bug-ID: "+ bugInstance.getInstanceHash() + ")";
-
+				+ "(FindBugs Bug-ID: "+ bug.getInstanceHash() + ")";
 		return md;
 	}
 	
 	/**
-	 * Gets a specified range of lines from a file.
-	 * @param file
-	 * @param start
-	 * @param end
+	 * Gets the Markdown formatted source code of a bug.
+	 * 
+	 * If enabled, a short excerpt of the remote-tracking commit with a link to the lines in that commit,
+	 * otherwise (or if the file is not pushed) the lines around the bug from the working tree.
+	 * @param bug
 	 * @return
 	 */
-	protected String getSourceCodeFragment(File file, int start, int end) {
-
-		// TODO handle already indented lines somehow
+	protected String getSourceCodeSnippet(BugInstance bug) {
+		int start = bug.getPrimarySourceLineAnnotation().getStartLine();
+		int end = bug.getPrimarySourceLineAnnotation().getEndLine();
+		File sourceFile = getSourceFile(bug);
+		if(session != null && session.getCommitSnippetSource() != null && CommitSnippetSource.isEnabled()) {
+			String snippet = getCommitPinnedSnippet(session.getCommitSnippetSource(), sourceFile, start, end);
+			if(snippet != null) {
+				return snippet;
+			}
+		}
+		return "```java\n" + getSourceCodeFragment(sourceFile, start - 5, end + 5) + "```\n\n";
+	}
+	
+	/**
+	 * Gets a short excerpt of the lines of a bug in the remote-tracking commit and a link to the lines.
+	 * @param source
+	 * @param file the source file in the working tree
+	 * @param start first line of the bug
+	 * @param end last line of the bug
+	 * @return null if the file is not part of the commit or was changed in the working tree
+	 */
+	protected String getCommitPinnedSnippet(CommitSnippetSource source, File file, int start, int end) {
+		CommitSnippetSource.PinnedFile pinnedFile = source.getFile(file);
+		if(pinnedFile == null || start < 1 || start > pinnedFile.getLines().length) {
+			return null;
+		}
+		String commit = pinnedFile.getCommit();
+		String path = pinnedFile.getPath();
+		String[] lines = pinnedFile.getLines();
+		end = Math.min(Math.max(start, end), lines.length);
+		int excerptStart = Math.max(1, start - 2);
+		int excerptEnd = Math.min(Math.min(lines.length, end + 2), excerptStart + maxExcerptLines - 1);
 		
-		if(start <= 1) {
-			start = 1;
+		StringBuilder md = new StringBuilder("```java\n");
+		for(String line : dedent(Arrays.asList(lines).subList(excerptStart - 1, excerptEnd))) {
+			md.append(line).append("\n");
 		}
-
-		try (LineNumberReader rdr = new LineNumberReader(new FileReader(file))) {
-			StringBuilder sb1 = new StringBuilder();
-			for (String line = null; (line = rdr.readLine()) != null;) {
-				if (rdr.getLineNumber() >= start && rdr.getLineNumber() <= end) {
-					sb1.append(line).append("\n");
+		md.append("```\n\n");
+		String permalink = getPermalink(commit, path, start, end);
+		if(permalink != null) {
+			md.append("[").append(path).append(start == end ? " line " + start : " lines " + start + "-" + end).append(" at ")
+					.append(commit.substring(0, 7)).append("](").append(permalink).append(")\n\n");
+		}
+		return md.toString();
+	}
+	
+	/**
+	 * Gets a link to lines of a file in a commit of the repository on the platform.
+	 * @param commit SHA-1 of the commit
+	 * @param path path of the file relative to the repository root
+	 * @param start first line
+	 * @param end last line
+	 * @return null if the platform is not supported
+	 */
+	protected String getPermalink(String commit, String path, int start, int end) {
+		return null;
+	}
+	
+	/**
+	 * Removes the indentation all non-blank lines have in common.
+	 * @param lines
+	 * @return the dedented lines
+	 */
+	protected static List<String> dedent(List<String> lines) {
+		String indentation = null;
+		for(String line : lines) {
+			if(line.trim().isEmpty()) {
+				continue;
+			}
+			int length = 0;
+			while(length < line.length() && Character.isWhitespace(line.charAt(length))) {
+				length++;
+			}
+			if(indentation == null) {
+				indentation = line.substring(0, length);
+			} else {
+				int common = 0;
+				while(common < indentation.length() && common < length && indentation.charAt(common) == line.charAt(common)) {
+					common++;
 				}
+				indentation = indentation.substring(0, common);
 			}
-			return sb1.toString();
-		} catch (IOException e) {
-			logger.error(e.getMessage(), e);
+		}
+		if(indentation == null || indentation.isEmpty()) {
+			return lines;
+		}
+		List<String> dedented = new ArrayList<String>(lines.size());
+		for(String line : lines) {
+			dedented.add(line.length() >= indentation.length() ? line.substring(indentation.length()) : "");
+		}
+		return dedented;
+	}
+	
+	/**
+	 * Gets the source file a bug was found in.
+	 * @param bug
+	 * @return
+	 */
+	protected File getSourceFile(BugInstance bug) {
+		return ProjectUtils.getSourceFile(project, bug);
+	}
+	
+	/**
+	 * Gets a specified range of lines from a file, without their common indentation.
+	 * Files open in an editor are read from their document.
+	 * @see SourceLineProvider
+	 * @param file
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	protected String getSourceCodeFragment(File file, int start, int end) {
+		List<String> lines = SourceLineProvider.getLines(file, start, end);
+		if(lines == null) {
 			return null;
 		}
+		StringBuilder sb1 = new StringBuilder();
+		for (String line : dedent(lines)) {
+			sb1.append(line).append("\n");
+		}
+		return sb1.toString();
+	}
+	
+	/**
+	 * Records a step of the export of the bug in the ExportJournal.
+	 * @param type
+	 * @param issue the URI of the issue or null
+	 * @param message details depending on the type or null
+	 */
+	protected void journal(ExportEvent.Type type, URI issue, String message) {
+		if(ExportJournal.isEnabled()) {
+			ExportJournal.record(type, bugInstance.getInstanceHash(), getJournalRepository(), issue, message);
+		}
 	}
 	
+	/**
+	 * Gets the repository bugs are exported from as written to the ExportJournal.
+	 * @return "PLATFORM/OWNER/REPOSITORY" with a session, "OWNER/REPOSITORY" otherwise, null if there is no repository
+	 */
+	private String getJournalRepository() {
+		if(session != null) {
+			return session.getRemote().toString();
+		}
+		return ownerName != null ? ownerName + "/" + repositoryName : null;
+	}
 	
+	/**
+	 * Shows an issue (or the form to create it) to the user.
+	 * @param uri
+	 */
+	protected void openIssuePage(URI uri) {
+		if(showIssuePages) {
+			openWebPage(uri);
+		}
+	}
 	
 	/**
 	 * Opens a new browser window or new tab if browser already open.
@@ -1,5 +1,7 @@
 package de.kmindi.fbissueexport;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -13,7 +15,8 @@ import edu.umd.cs.findbugs.BugInstance;
 /**
  * Factory class for platform exporters.
  * 
- * IPlatformExporter implementing classes can be created either by calling matchPlatform(...) or by createExporter(String platformIdentifier).
+ * IPlatformExporter implementing classes are created for the remote of an ExporterSession (resolved by the PlatformResolver)
+ * or by createExporter(String platformIdentifier, ...).
  * 
  * @author Kai Mindermann
  *
@@ -34,40 +37,60 @@ public class PlatformExporterFactory {
 	private static Pattern platformUrlPattern = Pattern.compile("((git@|https://)([\\w\\.@]+)(/|:))([\\w,\\-,\\_]+)/([\\w,\\-,\\_]+)(.git){0,1}((/){0,1})");
 	
 	/**
-	 * Parses existing entrys in a git configuration for matching remote urls and uses the first matching to create a new PlatformExporter.
+	 * Parses existing entrys in a git configuration for matching remote urls.
 	 * @param storedConfig
-	 * @param bugInstance
-	 * @param project
-	 * @return null if no matching url was found or the corresponding PlatformExporter
+	 * @return all remotes pointing to a supported platform in the order of the configuration, empty if none matches
+	 * @see PlatformResolver
 	 */
-	public static IPlatformExporter matchPlatform(Config storedConfig, BugInstance bugInstance, IProject project) {
-		
+	public static List<RemoteRepository> matchRemotes(Config storedConfig) {
+		List<RemoteRepository> matchingRemotes = new ArrayList<RemoteRepository>();
 		Set<String> remotes = storedConfig.getSubsections("remote");
 		for (String remoteName : remotes) {
 			String url = storedConfig.getString("remote", remoteName, "url");
-			logger.debug("trying to match: " + url);
-			// parse url for popular social coding platforms
-			Matcher matcher = platformUrlPattern.matcher(url);
+			if(url == null) {
+				continue;
+			}
+			if(logger.isDebugEnabled()) {
+				logger.debug("trying to match: " + url);
+			}
+			// SourceForge first, its URLs (e.g. with mount point "git") would also match the generic pattern
+			Matcher matcher = SourceForgeExporter.getplatformURLPattern().matcher(url);
 			if(matcher.matches()) {
-				// found a plattform
-				logger.debug("regex matched platform: " + matcher.group(3) + " owner: " + matcher.group(5) + " repo: " + matcher.group(6));
+				if(logger.isDebugEnabled()) {
+					logger.debug("regex matched SourceForge project: " + matcher.group(3) + " mountpoint: " + matcher.group(4));
+				}
+				matchingRemotes.add(new RemoteRepository(remoteName, "sourceforge.net", matcher.group(3), matcher.group(4)));
+			} else if((matcher = platformUrlPattern.matcher(url)).matches()) {
+				// parse url for popular social coding platforms
+				if(logger.isDebugEnabled()) {
+					logger.debug("regex matched platform: " + matcher.group(3) + " owner: " + matcher.group(5) + " repo: " + matcher.group(6));
+				}
 				
 				String platformURLPart = matcher.group(3).toLowerCase();
 				switch(platformURLPart) {
-				case "github.com": return new GitHubExporter(matcher.group(5), matcher.group(6), bugInstance, project);
-				case "bitbucket.org": return new BitbucketExporter(matcher.group(5), matcher.group(6), bugInstance, project);
-				default: return null;
+				case "github.com": 
+				case "bitbucket.org": matchingRemotes.add(new RemoteRepository(remoteName, platformURLPart, matcher.group(5), matcher.group(6))); break;
+				default: break;
 				}
-				
-				// TODO check if the issue tracker is used on this platform
-				// TODO save used tracker in project preferences
-			} else if((matcher = SourceForgeExporter.getplatformURLPattern().matcher(url)).matches()){
-				// TODO create sourceforgepattern
-				// TODO call SourceForgeExporter
-				
 			}
 		}
-		return null;
+		return matchingRemotes;
+	}
+	
+	/**
+	 * Creates an IPlatformExporter for the remote of a session, which is shared with all exporters for the same repository.
+	 * @param session
+	 * @param bugInstance
+	 * @param project
+	 * @return null if the platform of the session is not supported, the corresponding PlatformExporter otherwise
+	 */
+	public static IPlatformExporter createExporter(ExporterSession session, BugInstance bugInstance, IProject project) {
+		RemoteRepository remote = session.getRemote();
+		IPlatformExporter exporter = createExporter(remote.getPlatform(), remote.getOwner(), remote.getRepositoryName(), bugInstance, project);
+		if(exporter instanceof PlatformExporter) {
+			((PlatformExporter) exporter).setSession(session);
+		}
+		return exporter;
 	}
 	
 	/**
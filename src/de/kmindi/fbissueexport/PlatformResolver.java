@@ -0,0 +1,167 @@
+package de.kmindi.fbissueexport;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.log4j.Logger;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.jgit.lib.Config;
+import org.osgi.service.prefs.BackingStoreException;
+
+/**
+ * Chooses the remote of a repository bugs are reported to.
+ *
+ * If more than one remote points to a supported platform (e.g. "origin" is a personal fork and "upstream" the project),
+ * all of them are probed concurrently with a short timeout. Remotes whose repository exists and has an issue tracker
+ * (or a parent having one) are preferred; between those the configurable preference order decides, which lists remote
+ * names or platforms (preference "remote.preference", default "upstream,origin"). The decision is persisted per
+ * repository, so the probing is only done once.
+ *
+ * @author Kai Mindermann
+ */
+public class PlatformResolver {
+
+	private static Logger logger = Logger.getLogger(PlatformResolver.class);
+	private static final String decisionPrefix = "remote.decision.";
+	private static final String defaultPreference = "upstream,origin";
+	private static final int defaultProbeTimeout = 3000;
+
+	private static ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "FindBugs issue export remote probe");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Chooses the remote of a repository bugs are reported to.
+	 * @param gitDir the git directory of the repository, identifies the persisted decision
+	 * @param storedConfig the configuration of the repository
+	 * @return null if no remote points to a supported platform, the chosen remote otherwise
+	 */
+	public static RemoteRepository resolve(File gitDir, Config storedConfig) {
+		List<RemoteRepository> remotes = PlatformExporterFactory.matchRemotes(storedConfig);
+		if(remotes.size() <= 1) {
+			return remotes.isEmpty() ? null : remotes.get(0);
+		}
+
+		IEclipsePreferences preferences = getPreferences();
+		String decisionKey = decisionPrefix + gitDir.getPath();
+		if(preferences != null) {
+			String decision = preferences.get(decisionKey, null);
+			for(RemoteRepository remote : remotes) {
+				if(remote.getRemoteName().equals(decision)) {
+					if(logger.isDebugEnabled()) {
+						logger.debug("using remembered remote " + decision + " of " + gitDir);
+					}
+					return remote;
+				}
+			}
+		}
+
+		List<String> preferenceOrder = getPreferenceOrder(preferences);
+		int timeout = preferences != null ? preferences.getInt("remote.probeTimeout", defaultProbeTimeout) : defaultProbeTimeout;
+		List<RepositoryProbe> probes = probe(remotes, timeout);
+		RepositoryProbe chosen = probes.stream()
+				.sorted(Comparator.comparingInt(PlatformResolver::getUsability)
+						.thenComparingInt(probe -> getPreferenceRank(preferenceOrder, probe.getRemote())))
+				.findFirst().get();
+		logger.info("chose " + chosen + " of " + probes.size() + " remotes of " + gitDir);
+
+		// remotes that did not answer might be the better choice next time
+		if(preferences != null && chosen.isAnswered()) {
+			preferences.put(decisionKey, chosen.getRemote().getRemoteName());
+			try {
+				preferences.flush();
+			} catch (BackingStoreException e) {
+				logger.error(e.getMessage(), e);
+			}
+		}
+		return chosen.getRemote();
+	}
+
+	/**
+	 * Probes all remotes concurrently.
+	 * @param remotes
+	 * @param timeoutMillis
+	 * @return the probes in the order of the remotes, unanswered for remotes which did not answer in time
+	 */
+	private static List<RepositoryProbe> probe(List<RemoteRepository> remotes, int timeoutMillis) {
+		List<CompletableFuture<RepositoryProbe>> futures = new ArrayList<CompletableFuture<RepositoryProbe>>();
+		for(RemoteRepository remote : remotes) {
+			futures.add(CompletableFuture.supplyAsync(() -> {
+				IPlatformExporter exporter = PlatformExporterFactory.createExporter(remote.getPlatform(), remote.getOwner(), remote.getRepositoryName(), null, null);
+				RepositoryProbe probe = ((PlatformExporter) exporter).probeRepository(remote, timeoutMillis);
+				if(logger.isDebugEnabled()) {
+					logger.debug("probed " + probe);
+				}
+				return probe;
+			}, executor));
+		}
+		try {
+			// the requests time out on their own, this only guards against a slow connection pool
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).get(2L * timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | TimeoutException e) {
+			logger.warn("probing remotes did not finish: " + e.getMessage());
+		}
+		List<RepositoryProbe> probes = new ArrayList<RepositoryProbe>();
+		for(int i = 0; i < remotes.size(); i++) {
+			CompletableFuture<RepositoryProbe> future = futures.get(i);
+			probes.add(future.isDone() && !future.isCompletedExceptionally() ? future.join() : RepositoryProbe.unanswered(remotes.get(i)));
+		}
+		return probes;
+	}
+
+	/**
+	 * Ranks a probe by how likely bugs can be exported to it.
+	 * @return 0 if usable, 1 if the platform did not answer, 2 if the repository or its tracker is missing
+	 */
+	private static int getUsability(RepositoryProbe probe) {
+		if(!probe.isAnswered()) {
+			return 1;
+		}
+		return probe.isUsable() ? 0 : 2;
+	}
+
+	/**
+	 * Ranks a remote by the position of its name or platform in the preference order.
+	 * @return the position, the size of the order if neither is listed
+	 */
+	private static int getPreferenceRank(List<String> preferenceOrder, RemoteRepository remote) {
+		for(int i = 0; i < preferenceOrder.size(); i++) {
+			String entry = preferenceOrder.get(i);
+			if(entry.equalsIgnoreCase(remote.getRemoteName()) || entry.equalsIgnoreCase(remote.getPlatform())) {
+				return i;
+			}
+		}
+		return preferenceOrder.size();
+	}
+
+	private static List<String> getPreferenceOrder(IEclipsePreferences preferences) {
+		String order = preferences != null ? preferences.get("remote.preference", defaultPreference) : defaultPreference;
+		return Arrays.asList(order.trim().split("\\s*,\\s*"));
+	}
+
+	/**
+	 * Gets the workspace preferences of the plugin.
+	 * @return null outside of a running platform
+	 */
+	private static IEclipsePreferences getPreferences() {
+		if(!Platform.isRunning()) {
+			return null;
+		}
+		return InstanceScope.INSTANCE.getNode("de.kmindi.fbissueexport");
+	}
+}
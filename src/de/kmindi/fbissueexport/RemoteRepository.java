@@ -0,0 +1,64 @@
+package de.kmindi.fbissueexport;
+
+/**
+ * Class for a git remote that points to a repository on a known platform.
+ *
+ * @author Kai Mindermann
+ */
+public class RemoteRepository {
+	private String remoteName;
+	private String platform;
+	private String owner;
+	private String repositoryName;
+
+	/**
+	 * Constructor.
+	 * @param remoteName the name of the remote in the git configuration
+	 * @param platform the platform identifier as used by PlatformExporterFactory.createExporter(...)
+	 * @param owner the owner of the repository
+	 * @param repositoryName the name of the repository
+	 */
+	public RemoteRepository(String remoteName, String platform, String owner, String repositoryName) {
+		this.remoteName = remoteName;
+		this.platform = platform;
+		this.owner = owner;
+		this.repositoryName = repositoryName;
+	}
+
+	/**
+	 * Getter for the remote name
+	 * @return the name of the remote in the git configuration
+	 */
+	public String getRemoteName() {
+		return remoteName;
+	}
+
+	/**
+	 * Getter for the platform identifier
+	 * @return the platform identifier
+	 */
+	public String getPlatform() {
+		return platform;
+	}
+
+	/**
+	 * Getter for the owner
+	 * @return the owner of the repository
+	 */
+	public String getOwner() {
+		return owner;
+	}
+
+	/**
+	 * Getter for the repository name
+	 * @return the name of the repository
+	 */
+	public String getRepositoryName() {
+		return repositoryName;
+	}
+
+	@Override
+	public String toString() {
+		return platform + "/" + owner + "/" + repositoryName;
+	}
+}
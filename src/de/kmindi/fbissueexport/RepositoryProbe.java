@@ -0,0 +1,95 @@
+package de.kmindi.fbissueexport;
+
+/**
+ * Class for what a platform reported about a repository when the PlatformResolver probed it.
+ *
+ * @author Kai Mindermann
+ */
+public class RepositoryProbe {
+	private RemoteRepository remote;
+	private boolean answered;
+	private boolean exists;
+	private boolean hasIssues;
+	private String parent;
+
+	/**
+	 * Constructor.
+	 * @param remote the probed remote
+	 * @param answered false if the platform did not answer in time
+	 * @param exists true if the repository exists
+	 * @param hasIssues true if the issue tracker of the repository is enabled
+	 * @param parent "OWNER/REPOSITORY" of the parent if the repository is a fork, null otherwise
+	 */
+	public RepositoryProbe(RemoteRepository remote, boolean answered, boolean exists, boolean hasIssues, String parent) {
+		this.remote = remote;
+		this.answered = answered;
+		this.exists = exists;
+		this.hasIssues = hasIssues;
+		this.parent = parent;
+	}
+
+	/**
+	 * Creates a probe for a remote the platform did not answer for.
+	 * @param remote
+	 * @return the probe
+	 */
+	public static RepositoryProbe unanswered(RemoteRepository remote) {
+		return new RepositoryProbe(remote, false, false, false, null);
+	}
+
+	/**
+	 * Getter for the remote
+	 * @return the probed remote
+	 */
+	public RemoteRepository getRemote() {
+		return remote;
+	}
+
+	/**
+	 * Getter for answered
+	 * @return false if the platform did not answer in time
+	 */
+	public boolean isAnswered() {
+		return answered;
+	}
+
+	/**
+	 * Getter for exists
+	 * @return true if the repository exists
+	 */
+	public boolean exists() {
+		return exists;
+	}
+
+	/**
+	 * Getter for hasIssues
+	 * @return true if the issue tracker of the repository is enabled
+	 */
+	public boolean hasIssues() {
+		return hasIssues;
+	}
+
+	/**
+	 * Getter for the parent
+	 * @return "OWNER/REPOSITORY" of the parent if the repository is a fork, null otherwise
+	 */
+	public String getParent() {
+		return parent;
+	}
+
+	/**
+	 * Checks if bugs can be exported to the remote, issues of forks are reported to the parent.
+	 * @return true if the repository exists and it or its parent has an issue tracker
+	 */
+	public boolean isUsable() {
+		return exists && (hasIssues || parent != null);
+	}
+
+	@Override
+	public String toString() {
+		if(!answered) {
+			return remote + " (no answer)";
+		}
+		return remote + " (exists: " + exists + ", issues: " + hasIssues + ", parent: " + parent + ")";
+	}
+}
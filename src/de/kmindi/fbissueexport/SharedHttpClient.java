@@ -0,0 +1,101 @@
+package de.kmindi.fbissueexport;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Provides one HttpClient with a connection pool for all requests of the plugin.
+ * 
+ * Keeping the connections to the platforms alive saves the TCP and TLS handshakes for every request.
+ * Responses have to be closed (or their entity consumed) to give the connection back to the pool.
+ * 
+ * @author Kai Mindermann
+ */
+public class SharedHttpClient {
+	
+	private static Logger logger = Logger.getLogger(SharedHttpClient.class);
+	private static PoolingHttpClientConnectionManager connectionManager = null;
+	private static CloseableHttpClient httpClient = null;
+	
+	/**
+	 * Gets the shared HttpClient, creates it on first use.
+	 * @return the shared HttpClient
+	 */
+	public static synchronized CloseableHttpClient get() {
+		if(httpClient == null) {
+			connectionManager = new PoolingHttpClientConnectionManager();
+			connectionManager.setMaxTotal(20);
+			connectionManager.setDefaultMaxPerRoute(8);
+			httpClient = HttpClientBuilder.create().setConnectionManager(connectionManager).build();
+		}
+		return httpClient;
+	}
+	
+	/**
+	 * Performs a HTTP GET Request with the shared HttpClient.
+	 * @param url
+	 * @param headers additional request headers
+	 * @return ResponseWithEntity(HTTPResponse, String entity) or null if the request failed, 
+	 * the entity is null if the response has none (e.g. 304 Not Modified)
+	 */
+	public static ResponseWithEntity executeGet(String url, Map<String, String> headers) {
+		return executeGet(url, headers, -1);
+	}
+	
+	/**
+	 * Performs a HTTP GET Request with the shared HttpClient which gives up after a timeout.
+	 * @param url
+	 * @param headers additional request headers
+	 * @param timeoutMillis timeout for getting a pooled connection, connecting and waiting for data, -1 for the defaults
+	 * @return ResponseWithEntity(HTTPResponse, String entity) or null if the request failed or timed out, 
+	 * the entity is null if the response has none (e.g. 304 Not Modified)
+	 */
+	public static ResponseWithEntity executeGet(String url, Map<String, String> headers, int timeoutMillis) {
+		HttpGet request = new HttpGet(url);
+		if(timeoutMillis > 0) {
+			request.setConfig(RequestConfig.custom().setConnectionRequestTimeout(timeoutMillis)
+					.setConnectTimeout(timeoutMillis).setSocketTimeout(timeoutMillis).build());
+		}
+		request.addHeader("content-type", "application/json");
+		for(Map.Entry<String, String> header : headers.entrySet()) {
+			request.addHeader(header.getKey(), header.getValue());
+		}
+		if(logger.isDebugEnabled()) {
+			logger.debug("request line:" + request.getRequestLine());
+		}
+		try (CloseableHttpResponse result = get().execute(request)) {
+			if(logger.isDebugEnabled()) {
+				logger.debug("request status: " + result.getStatusLine());
+			}
+			String entity = result.getEntity() != null ? EntityUtils.toString(result.getEntity(), "UTF-8") : null;
+			return new ResponseWithEntity(result, entity);
+		} catch (IOException e) {
+			logger.error(e.getMessage(), e);
+		}
+		return null;
+	}
+	
+	/**
+	 * Closes the shared HttpClient and all pooled connections.
+	 */
+	public static synchronized void shutdown() {
+		if(httpClient != null) {
+			try {
+				httpClient.close();
+			} catch (IOException e) {
+				logger.error(e.getMessage(), e);
+			}
+			httpClient = null;
+			connectionManager = null;
+		}
+	}
+}
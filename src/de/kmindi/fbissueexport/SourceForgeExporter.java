@@ -2,8 +2,10 @@ package de.kmindi.fbissueexport;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Collections;
 import java.util.regex.Pattern;
 
+import org.apache.http.HttpStatus;
 import org.apache.http.ParseException;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.log4j.Logger;
@@ -20,6 +22,11 @@ public class SourceForgeExporter extends PlatformExporter implements IPlatformEx
 
 	private static Logger logger = Logger.getLogger(SourceForgeExporter.class);
 	
+	/**
+	 * Mount point of the tracker bugs are reported to.
+	 */
+	private static final String trackerName = "bugs";
+	
 	/**
 	 * Regular Expression to check for sourceforge git urls
 	 * 
@@ -35,45 +42,118 @@ public class SourceForgeExporter extends PlatformExporter implements IPlatformEx
 	 *  Where MOUNTPOINT usually is "code"
 	 *  
 	 *  Groups:
-	 *  TODO
+	 *  - Group 3: Projectname
+	 *  - Group 4: Mountpoint
 	 */
-	private static Pattern platformURLPattern = Pattern.compile("((git@|https://)([\\w\\.@]+)(/|:))([\\w,\\-,\\_]+)/([\\w,\\-,\\_]+)(.git){0,1}((/){0,1})");
-	
+	private static Pattern platformURLPattern = Pattern.compile("(git|ssh|http|https)://([\\w\\.\\-]+@){0,1}git\\.code\\.(?:sf|sourceforge)\\.net/p/([\\w\\-]+)/([\\w\\-]+?)(\\.git){0,1}(/){0,1}", Pattern.CASE_INSENSITIVE);
 	
+	/**
+	 * Constructor.
+	 * @param ownerName the SourceForge project
+	 * @param repositoryName the mount point of the repository
+	 * @param bugInstance
+	 * @param project
+	 */
 	protected SourceForgeExporter(String ownerName, String repositoryName,
 			BugInstance bugInstance, IProject project) {
 		super(ownerName, repositoryName, bugInstance, project);
+		this.apiBaseUrl = "https://sourceforge.net/";
 	}
 	
 	public boolean exportBug() {
-		final String newIssueURL = "https://sourceforge.net/p/" + repositoryName + "/bugs/new/";
+		final String newIssueURL = apiBaseUrl + "p/" + ownerName + "/" + trackerName + "/new/";
 		try {
-			// TODO use isBugAlreadyReported to check if the bug was already reported
+			journal(ExportEvent.Type.RESOLVED, null, ownerName + "/" + trackerName);
+
+			// if the bug was already reported show the existing ticket
+			URI existingTicket = isBugAlreadyExported();
+			if(existingTicket != null) {
+				logger.info("bug " + bugInstance.getInstanceHash() + " was already exported to " + existingTicket);
+				exportedIssue = existingTicket;
+				journal(ExportEvent.Type.DUPLICATE, existingTicket, null);
+				openIssuePage(existingTicket);
+				return true;
+			}
+
+			// the ticket can only be created through the form, without it the export stays unfinished
+			if(!showIssuePages) {
+				return true;
+			}
 
 			// if the bug is not filed yet create a new issue
-			//https://sourceforge.net/p/<REPOSITORY>/bugs/new/?summary=<TITLE>&description=<DESCRIPTION>
+			//https://sourceforge.net/p/<PROJECT>/bugs/new/?summary=<TITLE>&description=<DESCRIPTION>
+			String description = getBugDescription();
+			journal(ExportEvent.Type.RENDERED, null, description.length() + " characters");
 			URIBuilder uriBuilder = new URIBuilder(newIssueURL);
 			uriBuilder.addParameter("summary", getBugTitle());
-			uriBuilder.addParameter("description", getBugDescription());
-			openWebPage(uriBuilder.build());
+			uriBuilder.addParameter("description", description);
+			openIssuePage(uriBuilder.build());
+			journal(ExportEvent.Type.SUBMITTED, null, "new ticket form");
 			return true;
 
 		} catch (ParseException | URISyntaxException e) {
 			logger.error(e.getMessage(), e);
+			journal(ExportEvent.Type.FAILED, null, e.getMessage());
 		};
 
 		return false;
 	}
 	
 	/**
-	 * Check all issues of the project if a given bug was already exported/reported.
-	 * @todo not implemented yet
-	 * @todo cache result and used cache version to check for further queries
-	 * @param bug
-	 * @return Boolean if the bug has been reported before
+	 * Check the tickets of the project if a given bug was already exported/reported.
+	 * 
+	 * Uses the AlluraTicketIndex, which only transfers tickets modified since its last refresh.
+	 * @return null if not exported an URI to the bug-report otherwise.
 	 */
 	public URI isBugAlreadyExported() {
-		return null;
+		return getTicketIndex().findTicket(bugInstance.getInstanceHash());
+	}
+	
+	/**
+	 * SourceForge has no forks to resolve, refreshes the ticket index instead.
+	 * @return "PROJECT/TRACKER"
+	 */
+	@Override
+	public String refreshIssueRepository() {
+		getTicketIndex().refresh();
+		return ownerName + "/" + trackerName;
+	}
+	
+	/**
+	 * Links to the first line of the bug in the pushed commit, e.g. https://sourceforge.net/p/PROJECT/MOUNTPOINT/ci/SHA/tree/PATH#l10
+	 */
+	@Override
+	protected String getPermalink(String commit, String path, int start, int end) {
+		return apiBaseUrl + "p/" + ownerName + "/" + repositoryName + "/ci/" + commit + "/tree/" + path + "#l" + start;
+	}
+	
+	/**
+	 * Checks if the project has a tracker at the mount point bugs are reported to.
+	 * SourceForge has no forks, so the probe never has a parent.
+	 */
+	@Override
+	public RepositoryProbe probeRepository(RemoteRepository remote, int timeoutMillis) {
+		ResponseWithEntity response = SharedHttpClient.executeGet(apiBaseUrl + "rest/p/" + ownerName + "/" + trackerName,
+				Collections.<String, String>emptyMap(), timeoutMillis);
+		if(response == null) {
+			return RepositoryProbe.unanswered(remote);
+		}
+		int status = response.getResponse().getStatusLine().getStatusCode();
+		if(status == HttpStatus.SC_NOT_FOUND) {
+			return new RepositoryProbe(remote, true, false, false, null);
+		}
+		if(status != HttpStatus.SC_OK) {
+			return RepositoryProbe.unanswered(remote);
+		}
+		return new RepositoryProbe(remote, true, true, true, null);
+	}
+	
+	/**
+	 * Gets the index of the tracker bugs of this project are reported to.
+	 * @return
+	 */
+	protected AlluraTicketIndex getTicketIndex() {
+		return AlluraTicketIndex.getIndex(apiBaseUrl, ownerName, trackerName);
 	}
 	
 	public static Pattern getplatformURLPattern() {
@@ -0,0 +1,105 @@
+package de.kmindi.fbissueexport;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.eclipse.core.filebuffers.FileBuffers;
+import org.eclipse.core.filebuffers.ITextFileBuffer;
+import org.eclipse.core.filebuffers.LocationKind;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+
+/**
+ * Provides lines of source files for snippets.
+ *
+ * Files which are open in an editor are read from the document of their file buffer, which needs no I/O and shows
+ * what the user sees (including unsaved changes). Other files are read from disk.
+ *
+ * @author Kai Mindermann
+ */
+public class SourceLineProvider {
+
+	private static Logger logger = Logger.getLogger(SourceLineProvider.class);
+
+	/**
+	 * Gets a range of lines of a file.
+	 * @param file
+	 * @param start first line, starting with 1
+	 * @param end last line, lines after the end of the file are left out
+	 * @return the lines without line delimiters or null if the file could not be read
+	 */
+	public static List<String> getLines(File file, int start, int end) {
+		if(start < 1) {
+			start = 1;
+		}
+		List<String> lines = getBufferedLines(file, start, end);
+		if(lines != null) {
+			return lines;
+		}
+
+		try (LineNumberReader rdr = new LineNumberReader(new FileReader(file))) {
+			lines = new ArrayList<String>();
+			for (String line = null; (line = rdr.readLine()) != null;) {
+				if (rdr.getLineNumber() > end) {
+					break;
+				} else if (rdr.getLineNumber() >= start) {
+					lines.add(line);
+				}
+			}
+			return lines;
+		} catch (IOException e) {
+			logger.error(e.getMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Gets a range of lines from the document of a file which is open in an editor.
+	 * @return null if the file is not open (or outside of a running platform)
+	 */
+	private static List<String> getBufferedLines(File file, int start, int end) {
+		if(!Platform.isRunning()) {
+			return null;
+		}
+		IFile workspaceFile = ResourcesPlugin.getWorkspace().getRoot().getFileForLocation(Path.fromOSString(file.getAbsolutePath()));
+		if(workspaceFile == null) {
+			return null;
+		}
+		// only asks for an existing buffer, connecting would read the file
+		ITextFileBuffer buffer = FileBuffers.getTextFileBufferManager().getTextFileBuffer(workspaceFile.getFullPath(), LocationKind.IFILE);
+		if(buffer == null) {
+			return null;
+		}
+		IDocument document = buffer.getDocument();
+		try {
+			List<String> lines = new ArrayList<String>();
+			for(int line = start - 1; line < Math.min(end, document.getNumberOfLines()); line++) {
+				int length = document.getLineLength(line);
+				String delimiter = document.getLineDelimiter(line);
+				if(delimiter != null) {
+					length -= delimiter.length();
+				}
+				lines.add(document.get(document.getLineOffset(line), length));
+			}
+			if(logger.isDebugEnabled()) {
+				logger.debug("read lines " + start + "-" + end + " of " + workspaceFile.getFullPath() + " from its open document");
+			}
+			return lines;
+		} catch (BadLocationException e) {
+			// the document was changed while reading, the saved file is good enough
+			if(logger.isDebugEnabled()) {
+				logger.debug("document of " + workspaceFile.getFullPath() + " changed while reading: " + e.getMessage());
+			}
+			return null;
+		}
+	}
+}
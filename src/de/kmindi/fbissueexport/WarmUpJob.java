@@ -0,0 +1,74 @@
+package de.kmindi.fbissueexport;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.JavaCore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Low priority background job which does the work of a first export in advance.
+ *
+ * Loads the classes used for exports, the persisted caches and resolves the platform of every open java project
+ * with a git remote. Resolving the platform asks its API, which also leaves an open connection in the pool of the SharedHttpClient.
+ *
+ * @author Kai Mindermann
+ *
+ */
+public class WarmUpJob extends Job {
+
+	private static Logger logger = Logger.getLogger(WarmUpJob.class);
+
+	/**
+	 * Constructor.
+	 */
+	public WarmUpJob() {
+		super("Preparing FindBugs issue export");
+		setSystem(true);
+		setPriority(Job.DECORATE);
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		// load classes and caches
+		new ObjectMapper();
+		SharedHttpClient.get();
+		IssueRepositoryCache.load();
+
+		Set<ExporterSession> sessions = new HashSet<ExporterSession>();
+		for(IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+			if(monitor.isCanceled()) {
+				return Status.CANCEL_STATUS;
+			}
+			try {
+				if(!project.isOpen() || !project.hasNature(JavaCore.NATURE_ID)) {
+					continue;
+				}
+				// projects sharing one repository share a session and only need to be resolved once
+				ExporterSession session = ExporterSessionRegistry.getSession(project);
+				if(session == null || !sessions.add(session)) {
+					continue;
+				}
+				IPlatformExporter exporter = PlatformExporterFactory.createExporter(session, null, project);
+				if(exporter instanceof PlatformExporter) {
+					String issueRepository = ((PlatformExporter) exporter).refreshIssueRepository();
+					if(logger.isDebugEnabled()) {
+						logger.debug("warm up resolved " + session.getRemote() + " to " + issueRepository);
+					}
+				}
+			} catch (CoreException e) {
+				logger.warn("warm up failed for project " + project.getName() + ": " + e.getMessage());
+			}
+		}
+		return Status.OK_STATUS;
+	}
+}
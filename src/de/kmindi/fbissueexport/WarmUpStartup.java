@@ -0,0 +1,22 @@
+package de.kmindi.fbissueexport;
+
+import org.eclipse.ui.IStartup;
+
+/**
+ * Activates the plugin after the workbench is started and schedules the WarmUpJob,
+ * so the first export does not have to pay for the preparation.
+ *
+ * Runs in background after the startup, the job itself is of low priority.
+ *
+ * @author Kai Mindermann
+ */
+public class WarmUpStartup implements IStartup {
+
+	@Override
+	public void earlyStartup() {
+		Activator activator = Activator.getDefault();
+		if(activator != null) {
+			activator.scheduleWarmUp();
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package de.kmindi.fbissueexport.actions;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.action.IAction;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.ui.IObjectActionDelegate;
+import org.eclipse.ui.IWorkbenchPart;
+
+import de.kmindi.fbissueexport.Activator;
+import de.kmindi.fbissueexport.ExportEvent;
+import de.kmindi.fbissueexport.ExportJournal;
+import de.kmindi.fbissueexport.ExporterSession;
+import de.kmindi.fbissueexport.ExporterSessionRegistry;
+import de.kmindi.fbissueexport.IPlatformExporter;
+import de.kmindi.fbissueexport.MarkerHarvester;
+import de.kmindi.fbissueexport.PlatformExporter;
+import de.kmindi.fbissueexport.PlatformExporterFactory;
+import edu.umd.cs.findbugs.BugInstance;
+
+/**
+ * Action that is called for right click on projects and exports the bugs again whose last export recorded in the
+ * ExportJournal did not finish, e.g. because the platform could not be reached.
+ *
+ * The user confirms the number of bugs once, the exports run in background without showing issues or forms.
+ * Bugs of platforms which can only create issues through the form are counted in the summary and stay unfinished.
+ * @see ExportJournal#getUnfinishedBugIds(List)
+ * @author Kai Mindermann
+ */
+public class RightClickProjectReexportAction implements IObjectActionDelegate {
+
+	private ISelection selection;
+	private static Logger logger = Logger.getLogger(RightClickProjectReexportAction.class);
+
+	@Override
+	public void run(IAction action) {
+		try {
+			if (!selection.isEmpty() && (selection instanceof IStructuredSelection)) {
+				final List<IProject> projects = new ArrayList<IProject>();
+				for (Iterator<?> it = ((IStructuredSelection) selection).iterator(); it.hasNext();) {
+					IProject project = RightClickIssueShowExportAction.getSelectedProject(it.next());
+					if (project != null && project.isOpen() && !projects.contains(project)) {
+						projects.add(project);
+					}
+				}
+				final File journalFile = Activator.getDefault().getJournalFile();
+				if (projects.isEmpty() || !journalFile.isFile()) {
+					logger.info("no open project selected or no export journal written");
+					return;
+				}
+				final Display display = Display.getCurrent();
+
+				Job job = new Job("Finding unfinished FindBugs issue exports") {
+					@Override
+					protected IStatus run(IProgressMonitor monitor) {
+						try {
+							Set<String> unfinished = ExportJournal.getUnfinishedBugIds(ExportJournal.replay(journalFile));
+							final Map<BugInstance, IProject> bugs = new LinkedHashMap<BugInstance, IProject>();
+							if (!unfinished.isEmpty()) {
+								for (Map.Entry<BugInstance, IProject> entry : MarkerHarvester.harvestBugs(projects, monitor).entrySet()) {
+									if (unfinished.contains(entry.getKey().getInstanceHash())) {
+										bugs.put(entry.getKey(), entry.getValue());
+									}
+								}
+							}
+							display.asyncExec(new Runnable() {
+								@Override
+								public void run() {
+									confirmExport(display, bugs);
+								}
+							});
+							return Status.OK_STATUS;
+						} catch (OperationCanceledException e) {
+							return Status.CANCEL_STATUS;
+						} catch (IOException e) {
+							logger.error(e.getMessage(), e);
+							return new Status(IStatus.ERROR, Activator.PLUGIN_ID, "could not read export journal " + journalFile, e);
+						}
+					}
+				};
+				job.schedule();
+			}
+		} catch (Exception e) {
+			logger.error(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Asks the user to export the bugs again and schedules the exports, runs in the UI thread.
+	 */
+	private static void confirmExport(final Display display, final Map<BugInstance, IProject> bugs) {
+		if (bugs.isEmpty()) {
+			MessageDialog.openInformation(display.getActiveShell(), "Export unfinished FindBugs Issues", "No unfinished exports found for the selected projects.");
+			return;
+		}
+		if (!MessageDialog.openConfirm(display.getActiveShell(), "Export unfinished FindBugs Issues", "Export " + bugs.size()
+				+ " bugs whose last export did not finish again?\n\nThe issues are not opened in the browser, a summary is shown when all exports are done.")) {
+			return;
+		}
+
+		Job job = new Job("Exporting " + bugs.size() + " unfinished FindBugs issues") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				int exported = 0;
+				int formOnly = 0;
+				int failed = 0;
+				monitor.beginTask(getName(), bugs.size());
+				for (Map.Entry<BugInstance, IProject> entry : bugs.entrySet()) {
+					if (monitor.isCanceled()) {
+						break;
+					}
+					switch (export(entry.getKey(), entry.getValue())) {
+					case SUBMITTED: exported++; break;
+					case RENDERED: formOnly++; break;
+					default: failed++; break;
+					}
+					monitor.worked(1);
+				}
+				monitor.done();
+
+				final String summary = "Created or found an existing issue: " + exported
+						+ "\nOnly possible through the issue form, export them from their markers: " + formOnly
+						+ "\nFailed: " + failed + (monitor.isCanceled() ? "\n\nThe export was canceled." : "");
+				logger.info("exported unfinished bugs again, " + summary.replace('\n', ' '));
+				display.asyncExec(new Runnable() {
+					@Override
+					public void run() {
+						MessageDialog.openInformation(display.getActiveShell(), "Export unfinished FindBugs Issues", summary);
+					}
+				});
+				return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+			}
+		};
+		job.schedule();
+	}
+
+	/**
+	 * Exports a bug without showing the issue, like Export but without asking the user.
+	 * @return SUBMITTED if the issue was created or existed, RENDERED if it needs the issue form, FAILED otherwise
+	 */
+	private static ExportEvent.Type export(BugInstance bug, IProject project) {
+		ExporterSession session = ExporterSessionRegistry.getSession(project);
+		if (session == null) {
+			ExportJournal.record(ExportEvent.Type.FAILED, bug.getInstanceHash(), project.getName(), null, "no supported platform");
+			return ExportEvent.Type.FAILED;
+		}
+		if (!session.beginExport(bug.getInstanceHash())) {
+			logger.info("bug " + bug.getInstanceHash() + " is already being exported");
+			return ExportEvent.Type.FAILED;
+		}
+		try {
+			IPlatformExporter exporter = PlatformExporterFactory.createExporter(session, bug, project);
+			if (!(exporter instanceof PlatformExporter)) {
+				return ExportEvent.Type.FAILED;
+			}
+			PlatformExporter platformExporter = (PlatformExporter) exporter;
+			platformExporter.setShowIssuePages(false);
+			if (!platformExporter.exportBug()) {
+				return ExportEvent.Type.FAILED;
+			}
+			return platformExporter.getExportedIssue() != null ? ExportEvent.Type.SUBMITTED : ExportEvent.Type.RENDERED;
+		} finally {
+			session.finishExport(bug.getInstanceHash());
+		}
+	}
+
+	@Override
+	public void selectionChanged(IAction action, ISelection selection) {
+		this.selection = selection;
+	}
+
+	@Override
+	public void setActivePart(IAction action, IWorkbenchPart targetPart) {
+	}
+
+}
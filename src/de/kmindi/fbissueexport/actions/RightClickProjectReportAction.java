@@ -0,0 +1,120 @@
+package de.kmindi.fbissueexport.actions;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.action.IAction;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.ui.IObjectActionDelegate;
+import org.eclipse.ui.IWorkbenchPart;
+
+import de.kmindi.fbissueexport.Activator;
+import de.kmindi.fbissueexport.FileReportExporter;
+import de.kmindi.fbissueexport.MarkerHarvester;
+import edu.umd.cs.findbugs.BugInstance;
+
+/**
+ * Action that is called for right click on projects and writes all their FindBugs bugs to one report file.
+ * @see FileReportExporter
+ * @author Kai Mindermann
+ */
+public class RightClickProjectReportAction implements IObjectActionDelegate {
+
+	private ISelection selection;
+	private IWorkbenchPart targetPart;
+	private static Logger logger = Logger.getLogger(RightClickProjectReportAction.class);
+
+	@Override
+	public void run(IAction action) {
+		if (targetPart == null) {
+			return;
+		}
+		try {
+			if (!selection.isEmpty() && (selection instanceof IStructuredSelection)) {
+				final boolean wholeWorkspace = isWholeWorkspace();
+				final List<IProject> projects = new ArrayList<IProject>();
+				if (!wholeWorkspace) {
+					for (Iterator<?> it = ((IStructuredSelection) selection).iterator(); it.hasNext();) {
+						IProject project = RightClickIssueShowExportAction.getSelectedProject(it.next());
+						if (project != null && project.isOpen() && !projects.contains(project)) {
+							projects.add(project);
+						}
+					}
+					if (projects.isEmpty()) {
+						logger.info("no open project selected");
+						return;
+					}
+				}
+				String reportName = projects.size() == 1 && !wholeWorkspace ? projects.get(0).getName() : "workspace";
+
+				FileDialog dialog = new FileDialog(targetPart.getSite().getShell(), SWT.SAVE);
+				dialog.setText("Export FindBugs Report");
+				dialog.setFilterExtensions(new String[] { "*.md", "*.html", "*.csv", "*.jsonl" });
+				dialog.setFilterNames(new String[] { "Markdown", "HTML", "CSV", "JSON Lines" });
+				dialog.setFileName(reportName + "-findbugs.md");
+				dialog.setOverwrite(true);
+				final String fileName = dialog.open();
+				if (fileName == null) {
+					return;
+				}
+
+				Job job = new Job("Writing FindBugs report of " + reportName) {
+					@Override
+					protected IStatus run(IProgressMonitor monitor) {
+						try {
+							Map<BugInstance, IProject> bugs = wholeWorkspace ? MarkerHarvester.harvestWorkspace(monitor)
+									: MarkerHarvester.harvestBugs(projects, monitor);
+							File reportFile = new File(fileName);
+							if (new FileReportExporter(bugs, reportFile, FileReportExporter.Format.fromFileName(fileName)).exportBug()) {
+								return Status.OK_STATUS;
+							}
+						} catch (OperationCanceledException e) {
+							return Status.CANCEL_STATUS;
+						} catch (RuntimeException e) {
+							logger.error(e.getMessage(), e);
+						}
+						return new Status(IStatus.ERROR, Activator.PLUGIN_ID, "could not write FindBugs report to " + fileName);
+					}
+				};
+				// no scheduling rule, the job only reads markers and writes a file outside of the workspace API
+				job.schedule();
+			}
+		} catch (Exception e) {
+			logger.error(e.getMessage(), e);
+		} finally {
+			targetPart = null;
+		}
+	}
+
+	/**
+	 * Checks if the report covers all open projects of the workspace instead of the selected ones.
+	 * @return false, overridden by RightClickWorkspaceReportAction
+	 */
+	protected boolean isWholeWorkspace() {
+		return false;
+	}
+
+	@Override
+	public void selectionChanged(IAction action, ISelection selection) {
+		this.selection = selection;
+	}
+
+	@Override
+	public void setActivePart(IAction action, IWorkbenchPart targetPart) {
+		this.targetPart = targetPart;
+	}
+
+}
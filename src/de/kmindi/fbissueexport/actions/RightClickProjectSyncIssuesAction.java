@@ -0,0 +1,53 @@
+package de.kmindi.fbissueexport.actions;
+
+import java.util.Iterator;
+
+import org.apache.log4j.Logger;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.jface.action.IAction;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.ui.IObjectActionDelegate;
+import org.eclipse.ui.IWorkbenchPart;
+
+import de.kmindi.fbissueexport.IssueStateSyncJob;
+
+/**
+ * Action that is called for right click on projects and synchronises the state of exported issues.
+ * @see IssueStateSyncJob
+ * @author Kai Mindermann
+ */
+public class RightClickProjectSyncIssuesAction implements IObjectActionDelegate {
+
+	private ISelection selection;
+	private static Logger logger = Logger.getLogger(RightClickProjectSyncIssuesAction.class);
+
+	@Override
+	public void run(IAction action) {
+		try {
+			if (!selection.isEmpty() && (selection instanceof IStructuredSelection)) {
+				for (Iterator<?> it = ((IStructuredSelection) selection).iterator(); it.hasNext();) {
+					IProject project = RightClickIssueShowExportAction.getSelectedProject(it.next());
+					if (project != null && project.isOpen()) {
+						if(logger.isDebugEnabled()) {
+							logger.debug("scheduling issue state synchronisation for project " + project.getName());
+						}
+						new IssueStateSyncJob(project).schedule();
+					}
+				}
+			}
+		} catch (Exception e) {
+			logger.error(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void selectionChanged(IAction action, ISelection selection) {
+		this.selection = selection;
+	}
+
+	@Override
+	public void setActivePart(IAction action, IWorkbenchPart targetPart) {
+	}
+
+}
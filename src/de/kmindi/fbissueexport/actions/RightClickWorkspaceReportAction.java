@@ -0,0 +1,16 @@
+package de.kmindi.fbissueexport.actions;
+
+/**
+ * Action that is called for right click on projects and writes the FindBugs bugs of all open projects of the
+ * workspace to one report file.
+ * @see RightClickProjectReportAction
+ * @author Kai Mindermann
+ */
+public class RightClickWorkspaceReportAction extends RightClickProjectReportAction {
+
+	@Override
+	protected boolean isWholeWorkspace() {
+		return true;
+	}
+
+}